@@ -3,21 +3,62 @@ package boardgame;
 import exceptions.BoardException;
 
 /**
+ * Pieces are kept in a flat array of cells surrounded by an off-board border
+ * (the 10x12 mailbox layout, generalized to any size). A piece moving from a
+ * cell adds an {@link #offset(int, int)} and lands either on the board or on
+ * the border, so movement loops need no bounds checks: border cells are never
+ * empty and never hold a piece. The border is wide enough for steps of up to
+ * two rows or columns, which covers sliding moves and a knight's jump.
+ * <p>
+ * Outside of move generation squares are identified by an int index,
+ * row * columns + column, and {@link #position(int)} gives the shared
+ * {@link Position} of a square to callers that still want objects.
  *
  * @author joana
  */
 public class Board {
+    private static final int BORDER = 2;
+    private static final Piece OFF_BOARD = new OffBoard();
+
     private int rows;
     private int columns;
-    private Piece[][] pieces;
+    // one row of cells holds the columns plus a border shared by both sides
+    private int stride;
+    private Piece[] cells;
+    private int[] cellRow;
+    private int[] cellColumn;
+    private int[] cellSquare;
+    private int[] squareCell;
+    private Position[] positions;
 
     public Board(int rows, int columns) {
         if(rows < 1 || columns < 1){
-            throw new BoardException("Error creating board: there must be at least 1 row and 1 column.");        
+            throw new BoardException("Error creating board: there must be at least 1 row and 1 column.");
         }
         this.rows = rows;
         this.columns = columns;
-        pieces = new Piece[rows][columns];
+        stride = columns + BORDER;
+        cells = new Piece[(rows + 2 * BORDER) * stride];
+        cellRow = new int[cells.length];
+        cellColumn = new int[cells.length];
+        cellSquare = new int[cells.length];
+        squareCell = new int[rows * columns];
+        positions = new Position[rows * columns];
+        for(int cell = 0; cell < cells.length; cell++) {
+            int row = cell / stride - BORDER;
+            int column = cell % stride - BORDER / 2;
+            cellRow[cell] = row;
+            cellColumn[cell] = column;
+            if(!positionExists(row, column)) {
+                cells[cell] = OFF_BOARD;
+                cellSquare[cell] = -1;
+                continue;
+            }
+            int square = square(row, column);
+            cellSquare[cell] = square;
+            squareCell[square] = cell;
+            positions[square] = new Position(row, column);
+        }
     }
 
     public int getRows() {
@@ -31,44 +72,138 @@ public class Board {
     public Piece piece(int row, int column){
         if(!positionExists(row, column))
             throw new BoardException("Position not on the board. \nPress enter to try again.");
-        return pieces[row][column];
+        return cells[cell(row, column)];
     }
-    
+
     public Piece piece(Position position){
-        if(!positionExists(position))
-            throw new BoardException("Position not on the board. \nPress enter to try again.");
-        return pieces[position.getRow()][position.getColumn()];
+        return piece(position.getRow(), position.getColumn());
     }
-    
+
     public void placePiece(Piece piece, Position position){
         if(thereIsAPiece(position))
             throw new BoardException("There is already a piece on position " + position + ". \nPress enter to try again.");
-        pieces[position.getRow()][position.getColumn()] = piece;
-        piece.position = position;
+        placePiece(piece, square(position.getRow(), position.getColumn()));
     }
-    
+
     public Piece removePiece(Position position){
         if(!positionExists(position))
             throw new BoardException("Position not on the board. \nPress enter to try again.");
-        if(piece(position) == null) return null;
+        return removePiece(square(position.getRow(), position.getColumn()));
+    }
+
+    /**
+     * Piece on a square index, or null. The index must be on the board.
+     */
+    public Piece piece(int square) {
+        return cells[squareCell[square]];
+    }
+
+    public void placePiece(Piece piece, int square) {
+        int cell = squareCell[square];
+        if(cells[cell] != null)
+            throw new BoardException("There is already a piece on position " + positions[square] + ". \nPress enter to try again.");
+        cells[cell] = piece;
+        piece.square = square;
+    }
 
-        Piece aux = piece(position);
-        aux.position = null;
-        pieces[position.getRow()][position.getColumn()] = null;
+    public Piece removePiece(int square) {
+        int cell = squareCell[square];
+        Piece aux = cells[cell];
+        if(aux == null) return null;
+
+        aux.square = -1;
+        cells[cell] = null;
         return aux;
     }
-    
+
     private boolean positionExists(int row, int column){
         return row >= 0 && row < rows && column >=0 && column < columns;
     }
-    
+
     public boolean positionExists(Position position){
         return positionExists(position.getRow(), position.getColumn());
     }
-    
+
     public boolean thereIsAPiece(Position position){
-        if(!positionExists(position))
-            throw new BoardException("Position not on the board. \nPress enter to try again.");
         return piece(position) != null;
     }
-}
\ No newline at end of file
+
+    public int square(int row, int column) {
+        return row * columns + column;
+    }
+
+    /**
+     * Shared, immutable position of a square index.
+     */
+    public Position position(int square) {
+        return positions[square];
+    }
+
+    /**
+     * Index of the cell holding the given square. The square must exist.
+     */
+    public int cell(int row, int column) {
+        return (row + BORDER) * stride + column + BORDER / 2;
+    }
+
+    public int cell(Position position) {
+        return cell(position.getRow(), position.getColumn());
+    }
+
+    public int cellOf(int square) {
+        return squareCell[square];
+    }
+
+    /**
+     * Square index of a cell, -1 for border cells.
+     */
+    public int squareOf(int cell) {
+        return cellSquare[cell];
+    }
+
+    /**
+     * What to add to a cell index to move by the given number of rows and
+     * columns, each between -2 and 2.
+     */
+    public int offset(int rowStep, int columnStep) {
+        return rowStep * stride + columnStep;
+    }
+
+    public boolean isOnBoard(int cell) {
+        return cells[cell] != OFF_BOARD;
+    }
+
+    /**
+     * True for a cell on the board without a piece; border cells are never empty.
+     */
+    public boolean isEmpty(int cell) {
+        return cells[cell] == null;
+    }
+
+    /**
+     * Piece on the cell, or null if it is empty or off the board.
+     */
+    public Piece pieceInCell(int cell) {
+        Piece piece = cells[cell];
+        return piece == OFF_BOARD ? null : piece;
+    }
+
+    public int rowOf(int cell) {
+        return cellRow[cell];
+    }
+
+    public int columnOf(int cell) {
+        return cellColumn[cell];
+    }
+
+    private static class OffBoard extends Piece {
+        OffBoard() {
+            super(null);
+        }
+
+        @Override
+        public int possibleMoves(int[] targets) {
+            return 0;
+        }
+    }
+}
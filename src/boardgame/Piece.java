@@ -5,7 +5,8 @@ package boardgame;
  * @author joana
  */
 public abstract class Piece {
-    protected Position position;
+    // index of the square holding the piece, -1 while it is off the board
+    protected int square = -1;
     private Board board;
 
     public Piece(Board board) {
@@ -16,19 +17,33 @@ public abstract class Piece {
         return board;
     }
 
-    public abstract boolean[][] possibleMoves();
+    public int getSquare() {
+        return square;
+    }
+
+    /**
+     * Writes the squares this piece can move to into {@code targets}, which
+     * must have room for every square of the board, and returns how many
+     * were written. Nothing is allocated.
+     */
+    public abstract int possibleMoves(int[] targets);
+
+    public boolean[][] possibleMoves() {
+        boolean[][] mat = new boolean[board.getRows()][board.getColumns()];
+        int[] targets = new int[board.getRows() * board.getColumns()];
+        int count = possibleMoves(targets);
+        for(int i=0; i<count; i++) {
+            mat[targets[i] / board.getColumns()][targets[i] % board.getColumns()] = true;
+        }
+        return mat;
+    }
 
     public boolean possibleMove(Position position) {
         return possibleMoves()[position.getRow()][position.getColumn()];
     }
 
     public boolean isThereAnyPossibleMove() {
-        boolean[][] mat = possibleMoves();
-        for(int i=0; i<mat.length; i++) {
-            for(int j=0; j<mat.length; j++) {
-                if(mat[i][j]) return true;
-            }
-        }
-        return false;
+        int[] targets = new int[board.getRows() * board.getColumns()];
+        return possibleMoves(targets) > 0;
     }
 }
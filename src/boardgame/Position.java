@@ -1,12 +1,14 @@
 package boardgame;
 
 /**
+ * Immutable, so a board can hand out one shared instance per square, see
+ * {@link Board#position(int)}.
  *
  * @author joana
  */
 public class Position {
-    private int row;
-    private int column;
+    private final int row;
+    private final int column;
 
     public Position(int row, int column) {
         this.row = row;
@@ -17,25 +19,25 @@ public class Position {
         return row;
     }
 
-    public void setRow(int row) {
-        this.row = row;
-    }
-
     public int getColumn() {
         return column;
     }
 
-    public void setColumn(int column) {
-        this.column = column;
+    @Override
+    public boolean equals(Object obj) {
+        if(this == obj) return true;
+        if(!(obj instanceof Position)) return false;
+        Position other = (Position) obj;
+        return row == other.row && column == other.column;
     }
-    
-    public void setValues(int row, int column){
-        this.row = row;
-        this.column = column;
+
+    @Override
+    public int hashCode() {
+        return 31 * row + column;
     }
 
     @Override
     public String toString() {
         return this.row + "," + this.column;
     }
-}
\ No newline at end of file
+}
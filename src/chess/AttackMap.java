@@ -0,0 +1,208 @@
+package chess;
+
+import java.util.Arrays;
+
+/**
+ * How many pieces of each color attack each square, kept up to date as
+ * pieces are put on and taken off the board instead of being worked out
+ * from every piece's moves when asked. A piece brings its own attacks with
+ * it, and a slider whose line runs through the square loses or gains the
+ * squares behind it, so an update only walks the lines through one square.
+ * The map keeps its own copy of where the pieces stand, so the first piece
+ * on a line is found with one bit scan.
+ * <p>
+ * Trial moves that are made and taken back at once, to test them for
+ * check, would pay for two updates each only to ask about one square, so
+ * the counts can be frozen meanwhile: the pieces are still followed and
+ * {@link #isAttacked} looks along the lines from the square instead, while
+ * the counts stay those of the position before the trials.
+ * Attacks are what a piece could capture: a pawn attacks its two forward
+ * diagonals and a slider the first occupied square of each line, whatever
+ * color the piece there has.
+ *
+ * @author joana
+ */
+final class AttackMap {
+    // north, south, west, east, then the diagonals; the opposite direction is d ^ 1
+    // and the odd directions run towards higher squares
+    private static final int[] ROW_STEPS = {-1, 1, 0, 0, -1, 1, -1, 1};
+    private static final int[] COLUMN_STEPS = {0, 0, -1, 1, -1, 1, 1, -1};
+    private static final long[][] RAYS = new long[8][64];
+    private static final int[][] KNIGHT = new int[64][];
+    private static final int[][] KING = new int[64][];
+    // by color ordinal, the squares a pawn of that color attacks
+    private static final int[][][] PAWN = new int[2][64][];
+
+    static {
+        for(int square = 0; square < 64; square++) {
+            int row = square >>> 3;
+            int column = square & 7;
+            for(int d = 0; d < 8; d++) {
+                for(int r = row + ROW_STEPS[d], c = column + COLUMN_STEPS[d]; r >= 0 && r < 8 && c >= 0 && c < 8;
+                        r += ROW_STEPS[d], c += COLUMN_STEPS[d]) {
+                    RAYS[d][square] |= 1L << (r * 8 + c);
+                }
+            }
+            KNIGHT[square] = steps(row, column, new int[][] {{-2, -1}, {-2, 1}, {-1, -2}, {-1, 2}, {1, -2}, {1, 2}, {2, -1}, {2, 1}});
+            KING[square] = steps(row, column, new int[][] {{-1, -1}, {-1, 0}, {-1, 1}, {0, -1}, {0, 1}, {1, -1}, {1, 0}, {1, 1}});
+            // white moves towards row 0
+            PAWN[Color.WHITE.ordinal()][square] = steps(row, column, new int[][] {{-1, -1}, {-1, 1}});
+            PAWN[Color.BLACK.ordinal()][square] = steps(row, column, new int[][] {{1, -1}, {1, 1}});
+        }
+    }
+
+    private final ChessPiece[] pieces = new ChessPiece[64];
+    private long occupied;
+    private final byte[][] counts = new byte[2][64];
+    private final long[] attacked = new long[2];
+    private boolean frozen;
+
+    private static int[] steps(int row, int column, int[][] offsets) {
+        int[] squares = new int[offsets.length];
+        int length = 0;
+        for(int[] offset : offsets) {
+            int r = row + offset[0];
+            int c = column + offset[1];
+            if(r >= 0 && r < 8 && c >= 0 && c < 8) squares[length++] = r * 8 + c;
+        }
+        return Arrays.copyOf(squares, length);
+    }
+
+    int count(Color color, int square) {
+        return counts[color.ordinal()][square];
+    }
+
+    boolean isAttacked(Color color, int square) {
+        if(frozen) return scan(color.ordinal(), square);
+        return (attacked[color.ordinal()] & 1L << square) != 0;
+    }
+
+    long attacked(Color color) {
+        return attacked[color.ordinal()];
+    }
+
+    /**
+     * Stops updating the counts until {@link #thaw()}; every move made
+     * meanwhile must be taken back before it.
+     */
+    void freeze() {
+        frozen = true;
+    }
+
+    void thaw() {
+        frozen = false;
+    }
+
+    /**
+     * Called once {@code piece} stands on {@code square}.
+     */
+    void placed(ChessPiece piece, int square) {
+        pieces[square] = piece;
+        occupied |= 1L << square;
+        if(frozen) return;
+        throughLines(square, -1);
+        attacks(piece, square, 1);
+    }
+
+    /**
+     * Called once {@code piece} has left {@code square}.
+     */
+    void removed(ChessPiece piece, int square) {
+        pieces[square] = null;
+        occupied &= ~(1L << square);
+        if(frozen) return;
+        attacks(piece, square, -1);
+        throughLines(square, 1);
+    }
+
+    private void attacks(ChessPiece piece, int square, int delta) {
+        int color = piece.getColor().ordinal();
+        switch(piece.getType()) {
+            case PAWN: add(color, PAWN[color][square], delta); break;
+            case KNIGHT: add(color, KNIGHT[square], delta); break;
+            case KING: add(color, KING[square], delta); break;
+            case BISHOP: slide(color, square, 4, 8, delta); break;
+            case ROOK: slide(color, square, 0, 4, delta); break;
+            case QUEEN: slide(color, square, 0, 8, delta); break;
+        }
+    }
+
+    private void add(int color, int[] squares, int delta) {
+        for(int square : squares) update(color, square, delta);
+    }
+
+    private void slide(int color, int square, int first, int last, int delta) {
+        for(int d = first; d < last; d++) {
+            for(long ray = reach(d, square); ray != 0; ray &= ray - 1) {
+                update(color, Long.numberOfTrailingZeros(ray), delta);
+            }
+        }
+    }
+
+    /**
+     * First piece from {@code square} in direction {@code d}, or -1 if there is none.
+     */
+    private int blocker(int d, int square) {
+        long blockers = RAYS[d][square] & occupied;
+        if(blockers == 0) return -1;
+        return (d & 1) != 0 ? Long.numberOfTrailingZeros(blockers) : 63 - Long.numberOfLeadingZeros(blockers);
+    }
+
+    /**
+     * Squares from {@code square} in direction {@code d} up to and including the first piece.
+     */
+    private long reach(int d, int square) {
+        int blocker = blocker(d, square);
+        return blocker < 0 ? RAYS[d][square] : RAYS[d][square] & ~RAYS[d][blocker];
+    }
+
+    /**
+     * Gives or takes from every slider aiming at {@code square} the squares
+     * behind it, up to and including the next piece.
+     */
+    private void throughLines(int square, int delta) {
+        for(int d = 0; d < 8; d++) {
+            int source = blocker(d, square);
+            if(source < 0) continue;
+            ChessPiece slider = pieces[source];
+            PieceType type = slider.getType();
+            boolean aims = type == PieceType.QUEEN || (d < 4 ? type == PieceType.ROOK : type == PieceType.BISHOP);
+            if(!aims) continue;
+            int color = slider.getColor().ordinal();
+            for(long ray = reach(d ^ 1, square); ray != 0; ray &= ray - 1) {
+                update(color, Long.numberOfTrailingZeros(ray), delta);
+            }
+        }
+    }
+
+    /**
+     * Whether a piece of {@code color} attacks {@code square}, worked out from where the pieces stand.
+     */
+    private boolean scan(int color, int square) {
+        // a pawn of color attacks the square from where a pawn of the other color on it would attack
+        if(is(PAWN[color ^ 1][square], color, PieceType.PAWN)) return true;
+        if(is(KNIGHT[square], color, PieceType.KNIGHT)) return true;
+        if(is(KING[square], color, PieceType.KING)) return true;
+        for(int d = 0; d < 8; d++) {
+            int source = blocker(d, square);
+            if(source < 0 || pieces[source].getColor().ordinal() != color) continue;
+            PieceType type = pieces[source].getType();
+            if(type == PieceType.QUEEN || (d < 4 ? type == PieceType.ROOK : type == PieceType.BISHOP)) return true;
+        }
+        return false;
+    }
+
+    private boolean is(int[] squares, int color, PieceType type) {
+        for(int square : squares) {
+            ChessPiece piece = pieces[square];
+            if(piece != null && piece.getType() == type && piece.getColor().ordinal() == color) return true;
+        }
+        return false;
+    }
+
+    private void update(int color, int square, int delta) {
+        if(delta > 0) {
+            if(counts[color][square]++ == 0) attacked[color] |= 1L << square;
+        } else if(--counts[color][square] == 0) attacked[color] &= ~(1L << square);
+    }
+}
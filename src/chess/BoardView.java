@@ -0,0 +1,37 @@
+package chess;
+
+import boardgame.Board;
+
+/**
+ * Read-only access to the live board of a match. Nothing is copied, so
+ * the view always shows the current position and is only safe to read on
+ * the thread that makes the moves; other threads read a {@link MatchSnapshot}.
+ *
+ * @author joana
+ */
+public final class BoardView {
+    private final Board board;
+
+    BoardView(Board board) {
+        this.board = board;
+    }
+
+    public int getRows() {
+        return board.getRows();
+    }
+
+    public int getColumns() {
+        return board.getColumns();
+    }
+
+    public ChessPiece piece(int row, int column) {
+        return (ChessPiece) board.piece(row, column);
+    }
+
+    /**
+     * Piece on a square numbered as in {@link Move}, or null if it is empty.
+     */
+    public ChessPiece piece(int square) {
+        return (ChessPiece) board.piece(square);
+    }
+}
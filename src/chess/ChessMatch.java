@@ -2,7 +2,6 @@ package chess;
 
 import boardgame.Board;
 import boardgame.Piece;
-import boardgame.Position;
 import chess.pieces.Bishop;
 import chess.pieces.King;
 import chess.pieces.Knight;
@@ -10,33 +9,177 @@ import chess.pieces.Pawn;
 import chess.pieces.Queen;
 import chess.pieces.Rook;
 import exceptions.ChessException;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.stream.Collectors;
+import exceptions.ChessException.Reason;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import monitoring.CheckMateTestEvent;
+import monitoring.ChessMetrics;
+import monitoring.MoveEvent;
 
 /**
  *
  * @author joana
  */
 public class ChessMatch {
+    public static final String START_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+    
+    private static final PieceType[] PIECE_TYPES = PieceType.values();
+    private static final Color[] COLORS = Color.values();
+    
+    private static final byte CHECKPOINT_VERSION = 1;
+    // header, occupancy, 64 pieces with the longest move counts and the captured counts
+    private static final int MAX_CHECKPOINT_SIZE = 14 + 8 + 64 * 6 + 12;
+
     private int turn;
     private Color currentPlayer;
     private Board board;
+    // attacked squares of both colors, updated as pieces are placed and removed
+    private AttackMap attackMap;
     private boolean check;
     private boolean checkMate;
     private ChessPiece enPassantVulnerable;
     private ChessPiece promoted;
+    private int halfMoveClock;
+    
+    private PieceList piecesOnTheBoard = new PieceList();
+    private PieceList capturedPieces = new PieceList();
+    
+    private Undo[] history = new Undo[64];
+    private int historySize;
+    
+    // bumped whenever a move is committed, so the legal move cache knows it is stale
+    private long version;
+    
+    // Zobrist keys of the pieces on their squares; getHash adds the rest of the position
+    private long pieceHash;
+    // the same keys for pawns only, which is all a pawn structure evaluation depends on
+    private long pawnHash;
+    private long legalMovesVersion = -1;
+    private Color legalMovesColor;
+    private final long[] pseudoLegalTargets = new long[64];
+    private final long[] legalTargets = new long[64];
+    // pseudo-legal moves tried while filling the cache, reported by the checkmate test event
+    private long trialMoves;
     
-    private List<Piece> piecesOnTheBoard = new ArrayList<>();
-    private List<Piece> capturedPieces = new ArrayList<>();
+    private MoveListener[] listeners = new MoveListener[0];
+    private BoardView boardView;
+    // null until snapshots are enabled, then replaced after every committed change
+    private volatile MatchSnapshot snapshot;
+    
+    // scratch space so move generation allocates nothing
+    private final int[] moveTargets = new int[64];
     
     public ChessMatch() {
         board = new Board(8, 8);
+        attackMap = new AttackMap();
         turn = 1;
         currentPlayer = Color.WHITE;
         initialSetup();
+        if(ChessMetrics.ENABLED) ChessMetrics.matchCreated(this);
+    }
+    
+    /**
+     * Starts a match from a position in Forsyth-Edwards Notation. Castling
+     * rights and en passant are mapped onto move counts and the en passant
+     * vulnerable pawn, the same state the regular rules read.
+     */
+    public ChessMatch(String fen) {
+        board = new Board(8, 8);
+        attackMap = new AttackMap();
+        loadFen(fen);
+        if(ChessMetrics.ENABLED) ChessMetrics.matchCreated(this);
+    }
+    
+    /**
+     * Restores a match saved with {@link #toBytes()}. Moves played before
+     * the match was saved can not be taken back.
+     */
+    public ChessMatch(byte[] checkpoint) {
+        board = new Board(8, 8);
+        attackMap = new AttackMap();
+        loadBytes(checkpoint);
+        if(ChessMetrics.ENABLED) ChessMetrics.matchCreated(this);
+    }
+    
+    /**
+     * Replaces the whole match with a position in Forsyth-Edwards Notation,
+     * keeping the buffers of this instance, so one match can be reused for
+     * many positions. Moves played before can no longer be taken back. If
+     * the FEN is invalid the match must be given another position before use.
+     */
+    public void setPosition(String fen) {
+        for(int square = 0; square < 64; square++) removePiece(square);
+        pieceHash = 0;
+        pawnHash = 0;
+        piecesOnTheBoard.clear();
+        capturedPieces.clear();
+        for(int i = 0; i < historySize; i++){
+            history[i].capturedPiece = null;
+            history[i].promotedPawn = null;
+            history[i].enPassantVulnerable = null;
+            history[i].promoted = null;
+        }
+        historySize = 0;
+        check = false;
+        checkMate = false;
+        enPassantVulnerable = null;
+        promoted = null;
+        halfMoveClock = 0;
+        version++;
+        loadFen(fen);
+        if(snapshot != null) publishSnapshot();
+    }
+
+    /**
+     * Starts publishing a {@link MatchSnapshot} after every move made with
+     * {@link #performChessMove}, every promotion replaced and every position
+     * set, so that other threads can read the match while this one plays.
+     * Each one costs a legal move generation and a copy of the board. Moves
+     * made with {@link #play} are left out, since the engine plays and takes
+     * back thousands of them per search.
+     */
+    public void enableSnapshots() {
+        if(snapshot == null) publishSnapshot();
+    }
+
+    /**
+     * The latest snapshot, safe to read from any thread without a lock.
+     *
+     * @throws IllegalStateException if snapshots were never enabled
+     */
+    public MatchSnapshot getSnapshot() {
+        MatchSnapshot current = snapshot;
+        if(current == null)
+            throw new IllegalStateException("Snapshots are not enabled for this match.");
+        return current;
     }
 
+    private void publishSnapshot() {
+        byte[] squares = new byte[64];
+        for(int square = 0; square < 64; square++) squares[square] = MatchSnapshot.encode(pieceAt(square));
+        long[] targets = legalTargets(currentPlayer).clone();
+        snapshot = new MatchSnapshot(version, turn, currentPlayer, check, checkMate, squares, targets,
+                pseudoLegalTargets.clone(), toFen());
+    }
+
+    public void addMoveListener(MoveListener listener) {
+        listeners = Arrays.copyOf(listeners, listeners.length + 1);
+        listeners[listeners.length - 1] = listener;
+    }
+    
+    public void removeMoveListener(MoveListener listener) {
+        for(int i = 0; i < listeners.length; i++){
+            if(listeners[i] == listener){
+                MoveListener[] remaining = new MoveListener[listeners.length - 1];
+                System.arraycopy(listeners, 0, remaining, 0, i);
+                System.arraycopy(listeners, i + 1, remaining, i, remaining.length - i);
+                listeners = remaining;
+                return;
+            }
+        }
+    }
+    
     public int getTurn() {
         return turn;
     }
@@ -60,6 +203,88 @@ public class ChessMatch {
     public ChessPiece getPromoted() {
         return promoted;
     }
+
+    public int getHalfMoveClock() {
+        return halfMoveClock;
+    }
+    
+    /**
+     * Piece on a square numbered as in {@link Move}, or null if it is empty.
+     */
+    public ChessPiece pieceAt(int square) {
+        return (ChessPiece) board.piece(square);
+    }
+    
+    public int getPieceCount(Color color, PieceType type) {
+        return piecesOnTheBoard.size(color, type);
+    }
+    
+    public int getCapturedCount(Color color, PieceType type) {
+        return capturedPieces.size(color, type);
+    }
+    
+    /**
+     * One of the {@link #getPieceCount} pieces of a color and type on the
+     * board. The order changes as pieces are captured.
+     */
+    public ChessPiece getPiece(Color color, PieceType type, int index) {
+        return piecesOnTheBoard.get(color, type, index);
+    }
+    
+    /**
+     * Zobrist hash of the position: pieces, side to move, castling rights and
+     * en passant column. Equal positions have equal hashes in any run.
+     */
+    public long getHash() {
+        long hash = pieceHash;
+        if(currentPlayer == Color.BLACK) hash ^= Zobrist.BLACK_TO_MOVE;
+        int rights = 0;
+        if(canCastle(7, 7)) rights |= 1;
+        if(canCastle(7, 0)) rights |= 2;
+        if(canCastle(0, 7)) rights |= 4;
+        if(canCastle(0, 0)) rights |= 8;
+        hash ^= Zobrist.castling(rights);
+        if(enPassantVulnerable != null) hash ^= Zobrist.enPassant(enPassantVulnerable.getSquare() & 7);
+        return hash;
+    }
+    
+    /**
+     * Zobrist hash of the pawns alone. It changes only when a pawn moves, is
+     * captured or promotes, so it keys caches of pawn structure evaluation.
+     */
+    public long getPawnHash() {
+        return pawnHash;
+    }
+    
+    /**
+     * Whether a piece of {@code color} attacks the square, numbered as in
+     * {@link Move}. Read from maps kept up to date move by move.
+     */
+    public boolean isAttacked(Color color, int square) {
+        return attackMap.isAttacked(color, square);
+    }
+    
+    /**
+     * How many pieces of {@code color} attack the square.
+     */
+    public int getAttackerCount(Color color, int square) {
+        return attackMap.count(color, square);
+    }
+    
+    /**
+     * Squares attacked by {@code color}, one bit per square numbered as in {@link Move}.
+     */
+    public long getAttackedSquares(Color color) {
+        return attackMap.attacked(color);
+    }
+    
+    /**
+     * The live board, read without copying; see {@link #getPieces()} for a copy.
+     */
+    public BoardView getBoardView() {
+        if(boardView == null) boardView = new BoardView(board);
+        return boardView;
+    }
     
     public ChessPiece[][] getPieces() {
         ChessPiece[][] mat = new ChessPiece[board.getRows()][board.getColumns()];
@@ -72,46 +297,282 @@ public class ChessMatch {
     }
     
     public boolean[][] possibleMoves(ChessPosition sourcePosition){
-        Position position = sourcePosition.toPosition();
-        validateSourcePosition(position);
-        return board.piece(position).possibleMoves();
+        int position = sourcePosition.toSquare();
+        try {
+            validateSourcePosition(position);
+        } catch(ChessException e) {
+            if(ChessMetrics.ENABLED) ChessMetrics.rejected(e.getReason());
+            throw e;
+        }
+        
+        long targets = legalTargets(currentPlayer)[position];
+        boolean[][] mat = new boolean[board.getRows()][board.getColumns()];
+        while(targets != 0){
+            int target = Long.numberOfTrailingZeros(targets);
+            mat[target >>> 3][target & 7] = true;
+            targets &= targets - 1;
+        }
+        return mat;
     }
 
     public ChessPiece performChessMove(ChessPosition sourcePosition, ChessPosition targetPosition) {
-        Position source = sourcePosition.toPosition();
-        Position target = targetPosition.toPosition();
+        MoveEvent event = new MoveEvent();
+        event.begin();
+        long start = ChessMetrics.ENABLED ? System.nanoTime() : 0;
+        ChessPiece capturedPiece;
+        int movedTurn = turn;
+        // what the delta needs to know about the board before the move
+        ChessPiece movingPiece = null;
+        boolean targetEmpty = false;
+        if(listeners.length > 0){
+            movingPiece = pieceAt(sourcePosition.toSquare());
+            targetEmpty = pieceAt(targetPosition.toSquare()) == null;
+        }
+        try {
+            capturedPiece = movePiece(sourcePosition, targetPosition);
+        } catch(ChessException e) {
+            if(ChessMetrics.ENABLED) ChessMetrics.rejected(e.getReason());
+            throw e;
+        } finally {
+            if(ChessMetrics.ENABLED) ChessMetrics.PERFORM_CHESS_MOVE.record(start);
+        }
+        
+        if(event.shouldCommit()){
+            event.source = sourcePosition.toString();
+            event.target = targetPosition.toString();
+            event.capture = capturedPiece != null;
+            event.promotion = promoted != null ? promoted.toString() : null;
+            event.check = check;
+            event.checkMate = checkMate;
+            event.position = toFen();
+            event.commit();
+        }
+        if(snapshot != null) publishSnapshot();
+        if(listeners.length > 0)
+            notifyMove(movedTurn, sourcePosition.toSquare(), targetPosition.toSquare(), movingPiece, capturedPiece, targetEmpty);
+        return capturedPiece;
+    }
+    
+    private ChessPiece movePiece(ChessPosition sourcePosition, ChessPosition targetPosition) {
+        int source = sourcePosition.toSquare();
+        int target = targetPosition.toSquare();
         validateSourcePosition(source);
         validateTargetPosition(source, target);
         Piece capturedPiece = makeMove(source, target);
-        
-        if(testCheck(currentPlayer)){
-            undoMove(source, target, capturedPiece);
-            throw new ChessException("You can't put yourself in check. \nPress enter to try again.");
-        }
+        version++;
         
         ChessPiece movedPiece = (ChessPiece)board.piece(target);
+        halfMoveClock = (movedPiece instanceof Pawn || capturedPiece != null) ? 0 : halfMoveClock + 1;
         
         // special move: promotion
         promoted = null;
         if(movedPiece instanceof Pawn){
-            if((movedPiece.getColor() == Color.WHITE && target.getRow() == 0) || (movedPiece.getColor() == Color.BLACK && target.getRow() == 7)){
+            if((movedPiece.getColor() == Color.WHITE && target < 8) || (movedPiece.getColor() == Color.BLACK && target >= 56)){
                 promoted = (ChessPiece)board.piece(target);
-                promoted = replacePromotedPiece("Q");
+                promoted = promote("Q");
             }
         }
         
+        // special move: en passant
+        if(movedPiece instanceof Pawn && (target == source - 16 || target == source + 16)){
+            enPassantVulnerable = movedPiece;
+        } else enPassantVulnerable = null;
         
         check = (testCheck(opponent(currentPlayer)));
         
+        // also fills the legal move cache for the player who moves next
         if(testCheckMate(opponent(currentPlayer))) checkMate = true;
         else nextTurn();       
         
-        // special move: en passant
-        if(movedPiece instanceof Pawn && (target.getRow() == source.getRow() - 2 || target.getRow() == source.getRow() + 2)){
+        return (ChessPiece) capturedPiece;
+    }
+    
+    /**
+     * Fills {@code moves} with every legal move of the current player and
+     * returns how many were written. Promotions are listed once per piece type.
+     */
+    public int legalMoves(int[] moves) {
+        long[] targets = legalTargets(currentPlayer);
+        int count = 0;
+        for(int source = 0; source < 64; source++){
+            long bits = targets[source];
+            if(bits == 0) continue;
+            boolean pawn = board.piece(source) instanceof Pawn;
+            while(bits != 0){
+                int target = Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                int move = Move.of(source, target);
+                if(pawn && (target < 8 || target >= 56)){
+                    moves[count++] = move | Move.PROMOTION_QUEEN << 12;
+                    moves[count++] = move | Move.PROMOTION_ROOK << 12;
+                    moves[count++] = move | Move.PROMOTION_BISHOP << 12;
+                    moves[count++] = move | Move.PROMOTION_KNIGHT << 12;
+                } else moves[count++] = move;
+            }
+        }
+        return count;
+    }
+    
+    /**
+     * Legal targets of every piece of {@code color}, one bit per square and
+     * indexed by source square. Computed at most once per committed move.
+     */
+    private long[] legalTargets(Color color) {
+        if(legalMovesVersion == version && legalMovesColor == color) return legalTargets;
+        
+        Arrays.fill(pseudoLegalTargets, 0L);
+        Arrays.fill(legalTargets, 0L);
+        
+        // trial moves only take opponent pieces off the board, so the lists of color stay put
+        attackMap.freeze();
+        for(PieceType type : PIECE_TYPES){
+            for(int i = 0; i < piecesOnTheBoard.size(color, type); i++){
+                ChessPiece p = piecesOnTheBoard.get(color, type, i);
+                int source = p.getSquare();
+                int count = possibleMoves(p, moveTargets);
+                for(int k = 0; k < count; k++){
+                    int target = moveTargets[k];
+                    long bit = 1L << target;
+                    pseudoLegalTargets[source] |= bit;
+                    trialMoves++;
+                    
+                    Piece capturedPiece = makeMove(source, target);
+                    boolean testCheck = testCheck(color);
+                    undoMove(source, target, capturedPiece);
+                    if(!testCheck) legalTargets[source] |= bit;
+                }
+            }
+        }
+        attackMap.thaw();
+        
+        legalMovesVersion = version;
+        legalMovesColor = color;
+        return legalTargets;
+    }
+    
+    public boolean isCapture(int move) {
+        int source = Move.source(move);
+        int target = Move.target(move);
+        if(pieceAt(target) != null) return true;
+        return pieceAt(source) instanceof Pawn && (source & 7) != (target & 7);
+    }
+    
+    /**
+     * Plays a legal move without the checks and checkmate test done by
+     * {@link #performChessMove}, so it can be reverted with {@link #takeBack()}.
+     * Meant for engines; the move must come from {@link #legalMoves(int[])}.
+     */
+    public void play(int move) {
+        int source = Move.source(move);
+        int target = Move.target(move);
+        
+        if(historySize == history.length)
+            history = Arrays.copyOf(history, historySize * 2);
+        Undo undo = history[historySize];
+        if(undo == null) undo = history[historySize] = new Undo();
+        historySize++;
+        
+        undo.move = move;
+        undo.enPassantVulnerable = enPassantVulnerable;
+        undo.promoted = promoted;
+        undo.check = check;
+        undo.checkMate = checkMate;
+        undo.halfMoveClock = halfMoveClock;
+        
+        ChessPiece movedPiece = (ChessPiece)board.piece(source);
+        undo.capturedPiece = makeMove(source, target);
+        undo.promotedPawn = null;
+        
+        String type = Move.promotionType(move);
+        if(type != null){
+            promoted = movedPiece;
+            undo.promotedPawn = movedPiece;
+            promote(type);
+        }
+        promoted = null;
+        
+        halfMoveClock = (movedPiece instanceof Pawn || undo.capturedPiece != null) ? 0 : halfMoveClock + 1;
+        if(movedPiece instanceof Pawn && (target == source - 16 || target == source + 16)){
             enPassantVulnerable = movedPiece;
         } else enPassantVulnerable = null;
         
-        return (ChessPiece) capturedPiece;
+        nextTurn();
+        version++;
+        check = testCheck(currentPlayer);
+        checkMate = false;
+    }
+    
+    /**
+     * Passes the turn without moving, for null move pruning; reverted with
+     * {@link #takeBack()}. The player to move must not be in check.
+     */
+    public void playNullMove() {
+        if(check)
+            throw new IllegalStateException("A player in check can't pass.");
+        if(historySize == history.length)
+            history = Arrays.copyOf(history, historySize * 2);
+        Undo undo = history[historySize];
+        if(undo == null) undo = history[historySize] = new Undo();
+        historySize++;
+        
+        undo.move = Move.NONE;
+        undo.enPassantVulnerable = enPassantVulnerable;
+        undo.promoted = promoted;
+        undo.check = check;
+        undo.checkMate = checkMate;
+        undo.halfMoveClock = halfMoveClock;
+        undo.capturedPiece = null;
+        undo.promotedPawn = null;
+        
+        promoted = null;
+        enPassantVulnerable = null;
+        halfMoveClock++;
+        nextTurn();
+        version++;
+        check = false;
+        checkMate = false;
+    }
+    
+    /**
+     * Reverts the last move made with {@link #play(int)} or {@link #playNullMove()}.
+     */
+    public void takeBack() {
+        if(historySize == 0)
+            throw new IllegalStateException("There is no move to take back.");
+        Undo undo = history[--historySize];
+        int source = Move.source(undo.move);
+        int target = Move.target(undo.move);
+        
+        turn--;
+        currentPlayer = opponent(currentPlayer);
+        
+        if(undo.move == Move.NONE){
+            enPassantVulnerable = undo.enPassantVulnerable;
+            promoted = undo.promoted;
+            check = undo.check;
+            checkMate = undo.checkMate;
+            halfMoveClock = undo.halfMoveClock;
+            version++;
+            return;
+        }
+        
+        if(undo.promotedPawn != null){
+            ChessPiece p = (ChessPiece)removePiece(target);
+            piecesOnTheBoard.remove(p);
+            placePiece(undo.promotedPawn, target);
+            piecesOnTheBoard.add(undo.promotedPawn);
+        }
+        
+        enPassantVulnerable = undo.enPassantVulnerable;
+        undoMove(source, target, undo.capturedPiece);
+        
+        promoted = undo.promoted;
+        check = undo.check;
+        checkMate = undo.checkMate;
+        halfMoveClock = undo.halfMoveClock;
+        version++;
+        undo.capturedPiece = null;
+        undo.promotedPawn = null;
     }
     
     public ChessPiece replacePromotedPiece(String type){
@@ -120,12 +581,57 @@ public class ChessMatch {
         if(!type.equals("B") && !type.equals("N") && !type.equals("R") && !type.equals("Q"))
             return promoted;
         
-        Position pos = promoted.getChessPosition().toPosition();
-        Piece p = board.removePiece(pos);
+        ChessPiece replaced = promoted;
+        ChessPiece newPiece = promote(type);
+        version++;
+        
+        // check and checkmate were decided with a queen on the promotion square
+        Color color = newPiece.getColor();
+        boolean wasCheckMate = checkMate;
+        check = testCheck(opponent(color));
+        checkMate = testCheckMate(opponent(color));
+        if(checkMate && !wasCheckMate){
+            turn--;
+            currentPlayer = color;
+        } else if(!checkMate && wasCheckMate) nextTurn();
+        if(snapshot != null) publishSnapshot();
+        
+        if(listeners.length > 0){
+            int square = newPiece.getSquare();
+            // the turn of the promoting move, which the opponent now plays unless it was mate
+            MoveDelta delta = new MoveDelta(checkMate ? turn : turn - 1, square, square, replaced, null, -1, -1, -1, newPiece, check, checkMate);
+            for(MoveListener listener : listeners) listener.promotionReplaced(delta);
+        }
+        return newPiece;
+    }
+    
+    private void notifyMove(int movedTurn, int source, int target, ChessPiece piece, ChessPiece captured, boolean targetEmpty){
+        int capturedSquare = -1;
+        if(captured != null){
+            // a pawn capturing onto an empty square took en passant
+            capturedSquare = targetEmpty ? (piece.getColor() == Color.WHITE ? target + 8 : target - 8) : target;
+        }
+        int rookSource = -1;
+        int rookTarget = -1;
+        if(piece instanceof King && target == source + 2){
+            rookSource = source + 3;
+            rookTarget = source + 1;
+        } else if(piece instanceof King && target == source - 2){
+            rookSource = source - 4;
+            rookTarget = source - 1;
+        }
+        MoveDelta delta = new MoveDelta(movedTurn, source, target, piece, captured, capturedSquare,
+                rookSource, rookTarget, promoted, check, checkMate);
+        for(MoveListener listener : listeners) listener.moveMade(delta);
+    }
+    
+    private ChessPiece promote(String type){
+        int pos = promoted.getSquare();
+        ChessPiece p = (ChessPiece)removePiece(pos);
         piecesOnTheBoard.remove(p);
         
         ChessPiece newPiece = newPiece(type, promoted.getColor());
-        board.placePiece(newPiece, pos);
+        placePiece(newPiece, pos);
         piecesOnTheBoard.add(newPiece);
         
         return newPiece;
@@ -138,111 +644,124 @@ public class ChessMatch {
         return new Rook(board, color);
     }
 
-    private Piece makeMove(Position source, Position target) {
-        ChessPiece p = (ChessPiece)board.removePiece(source);
+    private Piece makeMove(int source, int target) {
+        if(!ChessMetrics.ENABLED) return movePiece(source, target);
+        long start = System.nanoTime();
+        Piece capturedPiece = movePiece(source, target);
+        ChessMetrics.MAKE_MOVE.record(start);
+        return capturedPiece;
+    }
+    
+    private Piece movePiece(int source, int target) {
+        ChessPiece p = (ChessPiece)removePiece(source);
         p.increaseMoveCount();
-        Piece capturedPiece = board.removePiece(target);
-        board.placePiece(p, target);
+        Piece capturedPiece = removePiece(target);
+        placePiece(p, target);
         
         if(capturedPiece != null){
-            piecesOnTheBoard.remove(capturedPiece);
-            capturedPieces.add(capturedPiece);
+            piecesOnTheBoard.remove((ChessPiece)capturedPiece);
+            capturedPieces.add((ChessPiece)capturedPiece);
         }
         
         // special move: castling kingside rook
-        if(p instanceof King && target.getColumn() == source.getColumn() + 2){
-            Position sourceRook = new Position(source.getRow(), source.getColumn() + 3);
-            Position targetRook = new Position(source.getRow(), source.getColumn() + 1);
-            
-            ChessPiece rook = (ChessPiece)board.removePiece(sourceRook);
-            board.placePiece(rook, targetRook);
+        if(p instanceof King && target == source + 2){
+            ChessPiece rook = (ChessPiece)removePiece(source + 3);
+            placePiece(rook, source + 1);
             rook.increaseMoveCount();
         }
         
         // special move: castling queenside rook
-        if(p instanceof King && target.getColumn() == source.getColumn() - 2){
-            Position sourceRook = new Position(source.getRow(), source.getColumn() - 4);
-            Position targetRook = new Position(source.getRow(), source.getColumn() - 1);
-            
-            ChessPiece rook = (ChessPiece)board.removePiece(sourceRook);
-            board.placePiece(rook, targetRook);
+        if(p instanceof King && target == source - 2){
+            ChessPiece rook = (ChessPiece)removePiece(source - 4);
+            placePiece(rook, source - 1);
             rook.increaseMoveCount();
         }
         
         // special move: en passant
         if(p instanceof Pawn){
-            if(source.getColumn() != target.getColumn() && capturedPiece == null){
-                Position pawnPosition;
+            if((source & 7) != (target & 7) && capturedPiece == null){
+                int pawnPosition;
                 
-                if(p.getColor() == Color.WHITE) pawnPosition = new Position(target.getRow() + 1, target.getColumn());
-                else pawnPosition = new Position(target.getRow() - 1, target.getColumn());
+                if(p.getColor() == Color.WHITE) pawnPosition = target + 8;
+                else pawnPosition = target - 8;
                 
-                capturedPiece = board.removePiece(pawnPosition);
-                capturedPieces.add(capturedPiece);
-                piecesOnTheBoard.remove(capturedPiece);
+                capturedPiece = removePiece(pawnPosition);
+                piecesOnTheBoard.remove((ChessPiece)capturedPiece);
+                capturedPieces.add((ChessPiece)capturedPiece);
             }
         }
         
         return capturedPiece;
     }
     
-    private void undoMove(Position source, Position target, Piece capturedPiece){
-        ChessPiece p = (ChessPiece)board.removePiece(target);
+    private void undoMove(int source, int target, Piece capturedPiece){
+        if(!ChessMetrics.ENABLED){
+            restorePiece(source, target, capturedPiece);
+            return;
+        }
+        long start = System.nanoTime();
+        restorePiece(source, target, capturedPiece);
+        ChessMetrics.UNDO_MOVE.record(start);
+    }
+    
+    private void restorePiece(int source, int target, Piece capturedPiece){
+        ChessPiece p = (ChessPiece)removePiece(target);
         p.decreaseMoveCount();
-        board.placePiece(p, source);
+        placePiece(p, source);
         
         if(capturedPiece != null){
-            board.placePiece(capturedPiece, target);
-            capturedPieces.remove(capturedPiece);
-            piecesOnTheBoard.add(capturedPiece);
+            placePiece(capturedPiece, target);
+            capturedPieces.remove((ChessPiece)capturedPiece);
+            piecesOnTheBoard.add((ChessPiece)capturedPiece);
         }
         
         // special move: castling kingside rook
-        if(p instanceof King && target.getColumn() == source.getColumn() + 2){
-            Position sourceRook = new Position(source.getRow(), source.getColumn() + 3);
-            Position targetRook = new Position(source.getRow(), source.getColumn() + 1);
-            
-            ChessPiece rook = (ChessPiece)board.removePiece(targetRook);
-            board.placePiece(rook, sourceRook);
+        if(p instanceof King && target == source + 2){
+            ChessPiece rook = (ChessPiece)removePiece(source + 1);
+            placePiece(rook, source + 3);
             rook.decreaseMoveCount();
         }
         
         // special move: castling queenside rook
-        if(p instanceof King && target.getColumn() == source.getColumn() - 2){
-            Position sourceRook = new Position(source.getRow(), source.getColumn() - 4);
-            Position targetRook = new Position(source.getRow(), source.getColumn() - 1);
-            
-            ChessPiece rook = (ChessPiece)board.removePiece(targetRook);
-            board.placePiece(rook, sourceRook);
+        if(p instanceof King && target == source - 2){
+            ChessPiece rook = (ChessPiece)removePiece(source - 1);
+            placePiece(rook, source - 4);
             rook.decreaseMoveCount();
         }
         
         // special move: en passant
         if(p instanceof Pawn){
-            if(source.getColumn() != target.getColumn() && capturedPiece == enPassantVulnerable){
-                ChessPiece pawn = (ChessPiece)board.removePiece(target);                
-                Position pawnPosition;
+            if((source & 7) != (target & 7) && capturedPiece == enPassantVulnerable){
+                ChessPiece pawn = (ChessPiece)removePiece(target);                
+                int pawnPosition;
                 
-                if(p.getColor() == Color.WHITE) pawnPosition = new Position(3, target.getColumn());
-                else pawnPosition = new Position(4, target.getColumn());
+                if(p.getColor() == Color.WHITE) pawnPosition = Move.square(3, target & 7);
+                else pawnPosition = Move.square(4, target & 7);
                 
-                board.placePiece(pawn, pawnPosition);
+                placePiece(pawn, pawnPosition);
             }
         }
     }
 
-    private void validateSourcePosition(Position position) {
-        if (!board.thereIsAPiece(position))
-            throw new ChessException("There is no piece on source position. \nPress enter to try again.");
+    private void validateSourcePosition(int position) {
+        if (board.piece(position) == null)
+            throw new ChessException(Reason.NO_PIECE, "There is no piece on source position. \nPress enter to try again.");
         if (currentPlayer != ((ChessPiece)board.piece(position)).getColor())
-            throw new ChessException("The chosen piece is not yours. \nPress enter to try again.");
-        if (!board.piece(position).isThereAnyPossibleMove()) 
-            throw new ChessException("There are no possible moves for the chosen piece. \nPress enter to try again.");
+            throw new ChessException(Reason.NOT_YOUR_PIECE, "The chosen piece is not yours. \nPress enter to try again.");
+        // a pinned piece that could move but for the check is let through, and
+        // the target is then refused with SELF_CHECK, as it always was
+        legalTargets(currentPlayer);
+        if (pseudoLegalTargets[position] == 0) 
+            throw new ChessException(Reason.NO_POSSIBLE_MOVES, "There are no possible moves for the chosen piece. \nPress enter to try again.");
     }
 
-    private void validateTargetPosition(Position source, Position target) {
-        if (!board.piece(source).possibleMove(target))
-            throw new ChessException("The chosen piece can't move to target position. \nPress enter to try again.");
+    private void validateTargetPosition(int source, int target) {
+        long bit = 1L << target;
+        long[] legal = legalTargets(currentPlayer);
+        if ((pseudoLegalTargets[source] & bit) == 0)
+            throw new ChessException(Reason.INVALID_TARGET, "The chosen piece can't move to target position. \nPress enter to try again.");
+        if ((legal[source] & bit) == 0)
+            throw new ChessException(Reason.SELF_CHECK, "You can't put yourself in check. \nPress enter to try again.");
     }
     
     private void nextTurn(){
@@ -255,54 +774,327 @@ public class ChessMatch {
     }
     
     private ChessPiece king(Color color){
-        List<Piece> list = piecesOnTheBoard.stream().filter(x -> ((ChessPiece)x).getColor() == color).collect(Collectors.toList());
-        for(Piece p : list){
-            if(p instanceof King)
-                return (ChessPiece)p;
-        }
+        if(piecesOnTheBoard.size(color, PieceType.KING) > 0)
+            return piecesOnTheBoard.get(color, PieceType.KING, 0);
         
         throw new IllegalStateException("There is no " + color + " king on the board.");
     }
 
+    private int possibleMoves(ChessPiece p, int[] targets){
+        if(!ChessMetrics.ENABLED) return p.possibleMoves(targets);
+        long start = System.nanoTime();
+        int count = p.possibleMoves(targets);
+        ChessMetrics.possibleMoves(p.getType()).record(start);
+        return count;
+    }
+    
     private boolean testCheck(Color color){
-        Position kingPosition = king(color).getChessPosition().toPosition();
-        List<Piece> opponentPieces = piecesOnTheBoard.stream().filter(x -> ((ChessPiece)x).getColor() == opponent(color)).collect(Collectors.toList());
+        if(!ChessMetrics.ENABLED) return isKingAttacked(color);
+        long start = System.nanoTime();
+        boolean attacked = isKingAttacked(color);
+        ChessMetrics.TEST_CHECK.record(start);
+        return attacked;
+    }
+    
+    private boolean isKingAttacked(Color color){
+        return attackMap.isAttacked(opponent(color), king(color).getSquare());
+    }
+    
+    private boolean testCheckMate(Color color){
+        CheckMateTestEvent event = new CheckMateTestEvent();
+        event.begin();
+        long start = ChessMetrics.ENABLED ? System.nanoTime() : 0;
+        long tried = trialMoves;
+        boolean mated = isMated(color);
+        if(ChessMetrics.ENABLED) ChessMetrics.TEST_CHECK_MATE.record(start);
         
-        for(Piece p : opponentPieces){
-            boolean[][] mat = p.possibleMoves();
-            if(mat[kingPosition.getRow()][kingPosition.getColumn()])
-                return true;
+        if(event.shouldCommit()){
+            event.color = color.getDescription();
+            event.pseudoMoves = (int)(trialMoves - tried);
+            event.checkMate = mated;
+            event.commit();
         }
-        
-        return false;
+        return mated;
     }
     
-    private boolean testCheckMate(Color color){
+    private boolean isMated(Color color){
         if(!testCheck(color)) return false;
         
-        List<Piece> list = piecesOnTheBoard.stream().filter(x -> ((ChessPiece)x).getColor() == color).collect(Collectors.toList());
-        for(Piece p : list){
-            boolean[][] mat = p.possibleMoves();
-            for(int i=0; i<board.getRows(); i++){
-                for(int j=0; j<board.getColumns(); j++){
-                    if(mat[i][j]){
-                        Position source = ((ChessPiece)p).getChessPosition().toPosition();
-                        Position target = new Position(i, j);
-                        
-                        Piece capturedPiece = makeMove(source, target);
-                        boolean testCheck = testCheck(color);
-                        undoMove(source, target, capturedPiece);
-                        if(!testCheck) return false;
-                    }
+        long[] targets = legalTargets(color);
+        for(long bits : targets){
+            if(bits != 0) return false;
+        }
+        return true;
+    }
+    
+    /**
+     * Current position in Forsyth-Edwards Notation.
+     */
+    public String toFen() {
+        StringBuilder sb = new StringBuilder();
+        for(int i = 0; i < 8; i++) {
+            int empty = 0;
+            for(int j = 0; j < 8; j++) {
+                ChessPiece p = (ChessPiece)board.piece(i, j);
+                if(p == null) {
+                    empty++;
+                    continue;
                 }
+                if(empty > 0) sb.append(empty);
+                empty = 0;
+                String letter = p.toString();
+                sb.append(p.getColor() == Color.WHITE ? letter : letter.toLowerCase());
             }
+            if(empty > 0) sb.append(empty);
+            if(i < 7) sb.append('/');
         }
         
-        return true;
+        sb.append(currentPlayer == Color.WHITE ? " w " : " b ");
+        
+        int length = sb.length();
+        if(canCastle(7, 7)) sb.append('K');
+        if(canCastle(7, 0)) sb.append('Q');
+        if(canCastle(0, 7)) sb.append('k');
+        if(canCastle(0, 0)) sb.append('q');
+        if(sb.length() == length) sb.append('-');
+        
+        if(enPassantVulnerable != null) {
+            int square = enPassantVulnerable.getSquare();
+            sb.append(' ').append(Move.squareName(enPassantVulnerable.getColor() == Color.WHITE ? square + 8 : square - 8));
+        } else sb.append(" -");
+        
+        sb.append(' ').append(halfMoveClock).append(' ').append((turn + 1) / 2);
+        return sb.toString();
+    }
+    
+    private boolean canCastle(int row, int rookColumn) {
+        Piece king = board.piece(row, 4);
+        Piece rook = board.piece(row, rookColumn);
+        return king instanceof King && rook instanceof Rook
+                && ((ChessPiece)king).getColor() == ((ChessPiece)rook).getColor()
+                && ((ChessPiece)king).getColor() == (row == 7 ? Color.WHITE : Color.BLACK)
+                && ((ChessPiece)king).getMoveCount() == 0 && ((ChessPiece)rook).getMoveCount() == 0;
+    }
+    
+    private void loadFen(String fen) {
+        String[] fields = fen.trim().split("\\s+");
+        if(fields.length < 2)
+            throw new ChessException(Reason.INVALID_FEN, "Invalid FEN: " + fen);
+        
+        String[] ranks = fields[0].split("/");
+        if(ranks.length != 8)
+            throw new ChessException(Reason.INVALID_FEN, "Invalid FEN: " + fen);
+        for(int i = 0; i < 8; i++) {
+            int j = 0;
+            for(char c : ranks[i].toCharArray()) {
+                if(Character.isDigit(c)) {
+                    j += c - '0';
+                    continue;
+                }
+                if(j > 7)
+                    throw new ChessException(Reason.INVALID_FEN, "Invalid FEN: " + fen);
+                Color color = Character.isUpperCase(c) ? Color.WHITE : Color.BLACK;
+                ChessPiece piece;
+                switch(Character.toUpperCase(c)) {
+                    case 'K': piece = new King(board, color, this); break;
+                    case 'P':
+                        if(i == 0 || i == 7)
+                            throw new ChessException(Reason.INVALID_FEN, "Invalid FEN, pawn on the first or last rank: " + fen);
+                        piece = new Pawn(board, color, this);
+                        break;
+                    case 'B': case 'N': case 'R': case 'Q':
+                        piece = newPiece(String.valueOf(Character.toUpperCase(c)), color);
+                        break;
+                    default: throw new ChessException(Reason.INVALID_FEN, "Invalid FEN: " + fen);
+                }
+                // pieces away from their initial squares have moved at least once
+                if(piece instanceof Pawn && i != (color == Color.WHITE ? 6 : 1))
+                    piece.increaseMoveCount();
+                placePiece(piece, Move.square(i, j));
+                piecesOnTheBoard.add(piece);
+                j++;
+            }
+            if(j != 8)
+                throw new ChessException(Reason.INVALID_FEN, "Invalid FEN: " + fen);
+        }
+        
+        for(Color color : Color.values()) {
+            if(piecesOnTheBoard.size(color, PieceType.KING) == 0)
+                throw new ChessException(Reason.INVALID_FEN, "Invalid FEN, there is no " + color.getDescription().toLowerCase() + " king: " + fen);
+        }
+        
+        if(fields[1].equals("w")) currentPlayer = Color.WHITE;
+        else if(fields[1].equals("b")) currentPlayer = Color.BLACK;
+        else throw new ChessException(Reason.INVALID_FEN, "Invalid FEN: " + fen);
+        
+        String castling = fields.length > 2 ? fields[2] : "-";
+        setCastlingRights(7, castling.indexOf('K') >= 0, castling.indexOf('Q') >= 0);
+        setCastlingRights(0, castling.indexOf('k') >= 0, castling.indexOf('q') >= 0);
+        
+        if(fields.length > 3 && !fields[3].equals("-")) {
+            int square = Move.parseSquare(fields[3]);
+            int row = currentPlayer == Color.WHITE ? (square >>> 3) + 1 : (square >>> 3) - 1;
+            Piece p = board.piece(row, square & 7);
+            if(p instanceof Pawn && ((ChessPiece)p).getColor() != currentPlayer)
+                enPassantVulnerable = (ChessPiece)p;
+        }
+        
+        try {
+            halfMoveClock = fields.length > 4 ? Integer.parseInt(fields[4]) : 0;
+            int fullMove = fields.length > 5 ? Integer.parseInt(fields[5]) : 1;
+            turn = 2 * (Math.max(fullMove, 1) - 1) + (currentPlayer == Color.WHITE ? 1 : 2);
+        } catch(NumberFormatException e) {
+            throw new ChessException(Reason.INVALID_FEN, "Invalid FEN: " + fen);
+        }
+        
+        check = testCheck(currentPlayer);
+        checkMate = testCheckMate(currentPlayer);
+    }
+    
+    /**
+     * The match in a compact form for {@link #ChessMatch(byte[])}: the flags
+     * and counters, the occupied squares as one long, then a byte per piece
+     * holding its type and move count, and the captured pieces counted by
+     * type. A match in progress takes about 50 bytes.
+     */
+    public byte[] toBytes() {
+        ByteBuffer out = ByteBuffer.allocate(MAX_CHECKPOINT_SIZE);
+        out.put(CHECKPOINT_VERSION);
+        out.put((byte)((currentPlayer == Color.BLACK ? 1 : 0) | (check ? 2 : 0) | (checkMate ? 4 : 0)));
+        out.put((byte)(enPassantVulnerable != null ? enPassantVulnerable.getSquare() : -1));
+        out.put((byte)(promoted != null ? promoted.getSquare() : -1));
+        putVarInt(out, turn);
+        putVarInt(out, halfMoveClock);
+        
+        long occupied = 0;
+        for(int square = 0; square < 64; square++) {
+            if(board.piece(square) != null) occupied |= 1L << square;
+        }
+        out.putLong(occupied);
+        for(long bits = occupied; bits != 0; bits &= bits - 1) {
+            ChessPiece p = pieceAt(Long.numberOfTrailingZeros(bits));
+            int moves = p.getMoveCount();
+            // the low nibble holds short move counts, 15 means the rest follows
+            out.put((byte)((p.getColor().ordinal() * PIECE_TYPES.length + p.getType().ordinal()) << 4 | Math.min(moves, 15)));
+            if(moves >= 15) putVarInt(out, moves - 15);
+        }
+        for(Color color : COLORS) {
+            for(PieceType type : PIECE_TYPES) out.put((byte)capturedPieces.size(color, type));
+        }
+        return Arrays.copyOf(out.array(), out.position());
+    }
+    
+    private void loadBytes(byte[] checkpoint) {
+        ByteBuffer in = ByteBuffer.wrap(checkpoint);
+        try {
+            if(in.get() != CHECKPOINT_VERSION)
+                throw new ChessException(Reason.INVALID_CHECKPOINT, "Unknown checkpoint version.");
+            int flags = in.get();
+            int enPassantSquare = in.get();
+            int promotedSquare = in.get();
+            turn = getVarInt(in);
+            halfMoveClock = getVarInt(in);
+            
+            for(long bits = in.getLong(); bits != 0; bits &= bits - 1) {
+                int code = in.get() & 0xFF;
+                ChessPiece piece = newPiece(code >>> 4);
+                int moves = code & 15;
+                if(moves == 15) moves += getVarInt(in);
+                for(int i = 0; i < moves; i++) piece.increaseMoveCount();
+                placePiece(piece, Long.numberOfTrailingZeros(bits));
+                piecesOnTheBoard.add(piece);
+            }
+            for(int group = 0; group < COLORS.length * PIECE_TYPES.length; group++) {
+                int count = in.get() & 0xFF;
+                for(int i = 0; i < count; i++) capturedPieces.add(newPiece(group));
+            }
+            if(in.hasRemaining())
+                throw new ChessException(Reason.INVALID_CHECKPOINT, "Trailing bytes in checkpoint.");
+            
+            currentPlayer = (flags & 1) != 0 ? Color.BLACK : Color.WHITE;
+            check = (flags & 2) != 0;
+            checkMate = (flags & 4) != 0;
+            enPassantVulnerable = enPassantSquare >= 0 ? pieceAt(enPassantSquare) : null;
+            promoted = promotedSquare >= 0 ? pieceAt(promotedSquare) : null;
+            if((enPassantSquare >= 0 && !(enPassantVulnerable instanceof Pawn)) || (promotedSquare >= 0 && promoted == null))
+                throw new ChessException(Reason.INVALID_CHECKPOINT, "Invalid en passant or promotion square in checkpoint.");
+        } catch(BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new ChessException(Reason.INVALID_CHECKPOINT, "Truncated or corrupt checkpoint.");
+        }
+        
+        for(Color color : COLORS) {
+            if(piecesOnTheBoard.size(color, PieceType.KING) == 0)
+                throw new ChessException(Reason.INVALID_CHECKPOINT, "Invalid checkpoint, there is no " + color.getDescription().toLowerCase() + " king.");
+        }
+    }
+    
+    /**
+     * A new piece of the group numbered color * 6 + type, as in the checkpoint.
+     */
+    private ChessPiece newPiece(int group) {
+        if(group >= COLORS.length * PIECE_TYPES.length)
+            throw new ChessException(Reason.INVALID_CHECKPOINT, "Invalid piece in checkpoint.");
+        Color color = COLORS[group / PIECE_TYPES.length];
+        PieceType type = PIECE_TYPES[group % PIECE_TYPES.length];
+        if(type == PieceType.KING) return new King(board, color, this);
+        if(type == PieceType.PAWN) return new Pawn(board, color, this);
+        return newPiece(type.getLetter(), color);
+    }
+    
+    private static void putVarInt(ByteBuffer out, int value) {
+        while((value & ~0x7F) != 0) {
+            out.put((byte)(value & 0x7F | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte)value);
+    }
+    
+    private static int getVarInt(ByteBuffer in) {
+        int value = 0;
+        for(int shift = 0; shift < 32; shift += 7) {
+            int b = in.get();
+            value |= (b & 0x7F) << shift;
+            if(b >= 0) return value;
+        }
+        throw new ChessException(Reason.INVALID_CHECKPOINT, "Invalid number in checkpoint.");
+    }
+    
+    private void setCastlingRights(int row, boolean kingside, boolean queenside) {
+        Color color = row == 7 ? Color.WHITE : Color.BLACK;
+        Piece king = board.piece(row, 4);
+        if(!(king instanceof King) || ((ChessPiece)king).getColor() != color) {
+            king = king(color);
+            ((ChessPiece)king).increaseMoveCount();
+            return;
+        }
+        if(!kingside && !queenside) ((ChessPiece)king).increaseMoveCount();
+        
+        Piece rook = board.piece(row, 7);
+        if(rook instanceof Rook && !kingside) ((ChessPiece)rook).increaseMoveCount();
+        rook = board.piece(row, 0);
+        if(rook instanceof Rook && !queenside) ((ChessPiece)rook).increaseMoveCount();
+    }
+    
+    private void placePiece(Piece piece, int square) {
+        board.placePiece(piece, square);
+        attackMap.placed((ChessPiece)piece, square);
+        long key = Zobrist.piece((ChessPiece)piece, square);
+        pieceHash ^= key;
+        if(piece instanceof Pawn) pawnHash ^= key;
+    }
+    
+    private Piece removePiece(int square) {
+        Piece piece = board.removePiece(square);
+        if(piece == null) return null;
+        attackMap.removed((ChessPiece)piece, square);
+        long key = Zobrist.piece((ChessPiece)piece, square);
+        pieceHash ^= key;
+        if(piece instanceof Pawn) pawnHash ^= key;
+        return piece;
     }
     
     private void placeNewPiece(char column, int row, ChessPiece piece) {
-        board.placePiece(piece, new ChessPosition(column, row).toPosition());
+        placePiece(piece, new ChessPosition(column, row).toSquare());
         piecesOnTheBoard.add(piece);
     }
 
@@ -341,4 +1133,15 @@ public class ChessMatch {
         placeNewPiece('g', 7, new Pawn(board, Color.BLACK, this));
         placeNewPiece('h', 7, new Pawn(board, Color.BLACK, this));
     }
+    
+    private static class Undo {
+        int move;
+        Piece capturedPiece;
+        ChessPiece promotedPawn;
+        ChessPiece enPassantVulnerable;
+        ChessPiece promoted;
+        boolean check;
+        boolean checkMate;
+        int halfMoveClock;
+    }
 }
\ No newline at end of file
@@ -11,6 +11,8 @@ import boardgame.Position;
 public abstract class ChessPiece extends Piece {
     private Color color;
     private int moveCount;
+    // position in the PieceList holding this piece; a piece is in one list at a time
+    int slot = -1;
 
     public ChessPiece(Board board, Color color) {
         super(board);
@@ -21,6 +23,8 @@ public abstract class ChessPiece extends Piece {
         return color;
     }
     
+    public abstract PieceType getType();
+    
     public int getMoveCount(){
         return moveCount;
     }
@@ -34,11 +38,49 @@ public abstract class ChessPiece extends Piece {
     }
     
     public ChessPosition getChessPosition(){
-        return ChessPosition.fromPosition(position);
+        return ChessPosition.of(square);
     }
 
     protected boolean isThereOpponentPiece(Position position) {
         ChessPiece p = (ChessPiece) getBoard().piece(position);
         return p != null && p.getColor() != color;
     }
+    
+    protected boolean isThereOpponentPiece(int cell) {
+        ChessPiece p = (ChessPiece) getBoard().pieceInCell(cell);
+        return p != null && p.getColor() != color;
+    }
+    
+    protected boolean canMove(int cell) {
+        return getBoard().isEmpty(cell) || isThereOpponentPiece(cell);
+    }
+    
+    /**
+     * Adds the squares along a line up to the first opponent piece, returning
+     * the new number of targets.
+     */
+    protected int slide(int[] targets, int count, int rowStep, int columnStep) {
+        Board board = getBoard();
+        int step = board.offset(rowStep, columnStep);
+        int cell = board.cellOf(square) + step;
+        while(board.isEmpty(cell)) {
+            targets[count++] = board.squareOf(cell);
+            cell += step;
+        }
+        if(isThereOpponentPiece(cell)) {
+            targets[count++] = board.squareOf(cell);
+        }
+        return count;
+    }
+    
+    /**
+     * Adds a single step if it lands on an empty square or an opponent piece.
+     */
+    protected int step(int[] targets, int count, int rowStep, int columnStep) {
+        int cell = getBoard().cellOf(square) + getBoard().offset(rowStep, columnStep);
+        if(canMove(cell)) {
+            targets[count++] = getBoard().squareOf(cell);
+        }
+        return count;
+    }
 }
\ No newline at end of file
@@ -2,18 +2,27 @@ package chess;
 
 import boardgame.Position;
 import exceptions.ChessException;
+import exceptions.ChessException.Reason;
 
 /**
  *
  * @author joana
  */
 public class ChessPosition {
+    private static final ChessPosition[] SQUARES = new ChessPosition[64];
+    
+    static {
+        for(int square = 0; square < 64; square++){
+            SQUARES[square] = new ChessPosition((char)('a' + square % 8), 8 - square / 8);
+        }
+    }
+    
     private char column;
     private int row;
 
     public ChessPosition(char column, int row) {
         if(column < 'a' || column > 'h' || row < 1 || row > 8)
-            throw new ChessException("Error instantiating ChessPosition. Valid values are from a1 to h8. \nPress enter to try again.");
+            throw new ChessException(Reason.INVALID_POSITION, "Error instantiating ChessPosition. Valid values are from a1 to h8. \nPress enter to try again.");
         this.column = column;
         this.row = row;
     }
@@ -30,8 +39,22 @@ public class ChessPosition {
         return new Position(8-row, column-'a');
     }
     
+    /**
+     * Square index on the chess board, row * 8 + column with row 0 being rank 8.
+     */
+    public int toSquare(){
+        return (8 - row) * 8 + (column - 'a');
+    }
+    
     protected static ChessPosition fromPosition(Position position){
-        return new ChessPosition((char)('a' + position.getColumn()), 8 - position.getRow());
+        return of(position.getRow() * 8 + position.getColumn());
+    }
+    
+    /**
+     * Shared instance for a square index, see {@link #toSquare()}.
+     */
+    public static ChessPosition of(int square){
+        return SQUARES[square];
     }
 
     @Override
@@ -0,0 +1,74 @@
+package chess;
+
+/**
+ * What happened in a match packed into a single long, so events can be
+ * kept in primitive arrays and shared by any number of readers. The low
+ * bits hold a {@link Move}, then come the flags and the turn of the move.
+ * A {@link #PROMOTION_CHANGE} event records
+ * {@link ChessMatch#replacePromotedPiece(String)}: its move goes from the
+ * promotion square to itself and carries the new piece.
+ *
+ * @author joana
+ */
+public final class GameEvent {
+    public static final long CAPTURE = 1L << 16;
+    public static final long CHECK = 1L << 17;
+    public static final long CHECK_MATE = 1L << 18;
+    public static final long PROMOTION_CHANGE = 1L << 19;
+
+    private GameEvent() {
+    }
+
+    public static long of(int move, long flags, int turn) {
+        return move & 0xFFFFL | flags | (long)turn << 32;
+    }
+
+    /**
+     * The event for a delta passed to a {@link MoveListener}.
+     */
+    public static long of(MoveDelta delta) {
+        long flags = (delta.getCaptured() != null ? CAPTURE : 0) | (delta.isCheck() ? CHECK : 0)
+                | (delta.isCheckMate() ? CHECK_MATE : 0)
+                | (delta.getSource() == delta.getTarget() ? PROMOTION_CHANGE : 0);
+        return of(delta.toMove(), flags, delta.getTurn());
+    }
+
+    public static int move(long event) {
+        return (int)(event & 0xFFFF);
+    }
+
+    public static int turn(long event) {
+        return (int)(event >>> 32);
+    }
+
+    public static boolean isCapture(long event) {
+        return (event & CAPTURE) != 0;
+    }
+
+    public static boolean isCheck(long event) {
+        return (event & CHECK) != 0;
+    }
+
+    public static boolean isCheckMate(long event) {
+        return (event & CHECK_MATE) != 0;
+    }
+
+    public static boolean isPromotionChange(long event) {
+        return (event & PROMOTION_CHANGE) != 0;
+    }
+
+    /**
+     * The event as the turn and UCI move, e.g. "5 e4d5x+" for a capture
+     * giving check or "9 e8=N" for a promotion changed to a knight.
+     */
+    public static String toString(long event) {
+        StringBuilder sb = new StringBuilder().append(turn(event)).append(' ');
+        if(isPromotionChange(event))
+            sb.append(Move.squareName(Move.target(move(event)))).append('=').append(Move.promotionType(move(event)));
+        else sb.append(Move.toUci(move(event)));
+        if(isCapture(event)) sb.append('x');
+        if(isCheckMate(event)) sb.append('#');
+        else if(isCheck(event)) sb.append('+');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,174 @@
+package chess;
+
+import boardgame.Board;
+import chess.pieces.Bishop;
+import chess.pieces.King;
+import chess.pieces.Knight;
+import chess.pieces.Pawn;
+import chess.pieces.Queen;
+import chess.pieces.Rook;
+import exceptions.ChessException;
+import exceptions.ChessException.Reason;
+
+/**
+ * An immutable copy of a match as it was after one committed change, for
+ * threads other than the one making the moves. The match publishes a new
+ * snapshot through a volatile field after every change and never touches
+ * an old one, so a reader takes {@link ChessMatch#getSnapshot()} once and
+ * gets a consistent position without a lock, however long it reads it. It
+ * never sees the trial moves the match makes on its own board while it
+ * tests for checkmate.
+ * <p>
+ * The snapshot keeps the color and type of the piece on each square, never
+ * the match's own piece objects, whose square and board follow the live
+ * match. {@link #getPieces()} and {@link #getBoardView()} give pieces of
+ * their own, on a board built from those squares the first time either is
+ * asked for and which nothing moves afterwards. Those pieces belong to no
+ * match, so their own possibleMoves know nothing of castling or en passant;
+ * {@link #possibleMoves(ChessPosition)} gives the legal moves.
+ *
+ * @author joana
+ */
+public final class MatchSnapshot {
+    private final long version;
+    private final int turn;
+    private final Color currentPlayer;
+    private final boolean check;
+    private final boolean checkMate;
+    private static final PieceType[] PIECE_TYPES = PieceType.values();
+    private static final Color[] COLORS = Color.values();
+
+    // per square, 0 if it is empty, else the type ordinal plus one and the color ordinal above it
+    private final byte[] squares;
+    private final long[] targets;
+    private final long[] pseudoLegalTargets;
+    private final String fen;
+    private volatile BoardView boardView;
+
+    MatchSnapshot(long version, int turn, Color currentPlayer, boolean check, boolean checkMate,
+            byte[] squares, long[] targets, long[] pseudoLegalTargets, String fen) {
+        this.version = version;
+        this.turn = turn;
+        this.currentPlayer = currentPlayer;
+        this.check = check;
+        this.checkMate = checkMate;
+        this.squares = squares;
+        this.targets = targets;
+        this.pseudoLegalTargets = pseudoLegalTargets;
+        this.fen = fen;
+    }
+
+    /**
+     * Grows with every change to the match; a later snapshot has a greater version.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public int getTurn() {
+        return turn;
+    }
+
+    public Color getCurrentPlayer() {
+        return currentPlayer;
+    }
+
+    public boolean isCheck() {
+        return check;
+    }
+
+    public boolean isCheckMate() {
+        return checkMate;
+    }
+
+    static byte encode(ChessPiece piece) {
+        if(piece == null) return 0;
+        return (byte) (piece.getType().ordinal() + 1 | piece.getColor().ordinal() << 3);
+    }
+
+    /**
+     * Type of the piece on a square numbered as in {@link Move}, or null if it is empty.
+     */
+    public PieceType typeAt(int square) {
+        return squares[square] == 0 ? null : PIECE_TYPES[(squares[square] & 7) - 1];
+    }
+
+    /**
+     * Color of the piece on a square numbered as in {@link Move}, or null if it is empty.
+     */
+    public Color colorAt(int square) {
+        return squares[square] == 0 ? null : COLORS[squares[square] >>> 3];
+    }
+
+    /**
+     * The pieces of this snapshot's own board, in a new array on every call.
+     */
+    public ChessPiece[][] getPieces() {
+        BoardView view = getBoardView();
+        ChessPiece[][] mat = new ChessPiece[8][8];
+        for(int square = 0; square < 64; square++) {
+            mat[square >>> 3][square & 7] = view.piece(square);
+        }
+        return mat;
+    }
+
+    /**
+     * A view of a board set up as in this snapshot, which nothing moves.
+     */
+    public BoardView getBoardView() {
+        BoardView view = boardView;
+        if(view == null) {
+            // two threads may both build one; either board is the same position
+            view = new BoardView(buildBoard());
+            boardView = view;
+        }
+        return view;
+    }
+
+    private Board buildBoard() {
+        Board board = new Board(8, 8);
+        for(int square = 0; square < 64; square++) {
+            if(squares[square] == 0) continue;
+            Color color = colorAt(square);
+            ChessPiece piece;
+            switch(typeAt(square)) {
+                case KING: piece = new King(board, color, null); break;
+                case QUEEN: piece = new Queen(board, color); break;
+                case ROOK: piece = new Rook(board, color); break;
+                case BISHOP: piece = new Bishop(board, color); break;
+                case KNIGHT: piece = new Knight(board, color); break;
+                default: piece = new Pawn(board, color, null); break;
+            }
+            // as when a FEN is loaded, a pawn off its initial rank has moved
+            if(piece instanceof Pawn && square >>> 3 != (color == Color.WHITE ? 6 : 1))
+                piece.increaseMoveCount();
+            board.placePiece(piece, square);
+        }
+        return board;
+    }
+
+    /**
+     * Legal targets of the piece on a square, as {@link ChessMatch#possibleMoves}
+     * gives them and with the same exceptions.
+     */
+    public boolean[][] possibleMoves(ChessPosition sourcePosition) {
+        int position = sourcePosition.toSquare();
+        if(squares[position] == 0)
+            throw new ChessException(Reason.NO_PIECE, "There is no piece on source position. \nPress enter to try again.");
+        if(currentPlayer != colorAt(position))
+            throw new ChessException(Reason.NOT_YOUR_PIECE, "The chosen piece is not yours. \nPress enter to try again.");
+        if(pseudoLegalTargets[position] == 0)
+            throw new ChessException(Reason.NO_POSSIBLE_MOVES, "There are no possible moves for the chosen piece. \nPress enter to try again.");
+
+        boolean[][] mat = new boolean[8][8];
+        for(long bits = targets[position]; bits != 0; bits &= bits - 1) {
+            int target = Long.numberOfTrailingZeros(bits);
+            mat[target >>> 3][target & 7] = true;
+        }
+        return mat;
+    }
+
+    public String toFen() {
+        return fen;
+    }
+}
@@ -0,0 +1,97 @@
+package chess;
+
+import exceptions.ChessException;
+import exceptions.ChessException.Reason;
+
+/**
+ * Moves packed into a single int so engines can keep them in primitive arrays.
+ * Squares are numbered row * 8 + column, with row 0 being rank 8, the same
+ * layout the board uses.
+ *
+ * @author joana
+ */
+public final class Move {
+    public static final int NONE = 0;
+
+    public static final int PROMOTION_NONE = 0;
+    public static final int PROMOTION_KNIGHT = 1;
+    public static final int PROMOTION_BISHOP = 2;
+    public static final int PROMOTION_ROOK = 3;
+    public static final int PROMOTION_QUEEN = 4;
+
+    private static final String PROMOTION_TYPES = " NBRQ";
+
+    private Move() {
+    }
+
+    public static int of(int source, int target) {
+        return of(source, target, PROMOTION_NONE);
+    }
+
+    public static int of(int source, int target, int promotion) {
+        return source | target << 6 | promotion << 12;
+    }
+
+    public static int source(int move) {
+        return move & 63;
+    }
+
+    public static int target(int move) {
+        return (move >>> 6) & 63;
+    }
+
+    public static int promotion(int move) {
+        return (move >>> 12) & 7;
+    }
+
+    /**
+     * Piece letter used by {@link ChessMatch#replacePromotedPiece(String)},
+     * or null when the move is not a promotion.
+     */
+    public static String promotionType(int move) {
+        int promotion = promotion(move);
+        return promotion == PROMOTION_NONE ? null : String.valueOf(PROMOTION_TYPES.charAt(promotion));
+    }
+
+    public static int square(int row, int column) {
+        return row * 8 + column;
+    }
+
+    public static String squareName(int square) {
+        return "" + (char)('a' + (square & 7)) + (8 - (square >>> 3));
+    }
+
+    public static int parseSquare(String s) {
+        if(s.length() != 2)
+            throw new ChessException(Reason.INVALID_POSITION, "Invalid square: " + s);
+        char column = s.charAt(0);
+        char row = s.charAt(1);
+        if(column < 'a' || column > 'h' || row < '1' || row > '8')
+            throw new ChessException(Reason.INVALID_POSITION, "Invalid square: " + s);
+        return square('8' - row, column - 'a');
+    }
+
+    /**
+     * Long algebraic notation as used by UCI, e.g. e2e4 or e7e8q.
+     */
+    public static String toUci(int move) {
+        if(move == NONE) return "0000";
+        String s = squareName(source(move)) + squareName(target(move));
+        String type = promotionType(move);
+        return type == null ? s : s + type.toLowerCase();
+    }
+
+    public static int fromUci(String s) {
+        if(s.length() != 4 && s.length() != 5)
+            throw new ChessException(Reason.INVALID_MOVE, "Invalid move: " + s);
+        int source = parseSquare(s.substring(0, 2));
+        int target = parseSquare(s.substring(2, 4));
+        int promotion = PROMOTION_NONE;
+        if(s.length() == 5) {
+            promotion = PROMOTION_TYPES.indexOf(Character.toUpperCase(s.charAt(4)));
+            if(promotion <= PROMOTION_NONE)
+                throw new ChessException(Reason.INVALID_MOVE, "Invalid promotion piece in move: " + s);
+        }
+        return of(source, target, promotion);
+    }
+}
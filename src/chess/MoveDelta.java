@@ -0,0 +1,115 @@
+package chess;
+
+/**
+ * Every square a move changed, so a listener can update its own copy of
+ * the board without reading the rest of it: the moved piece, the captured
+ * piece and where it stood, which differs from the target for en passant,
+ * the rook of a castling and the piece a pawn was promoted to.
+ *
+ * @author joana
+ */
+public final class MoveDelta {
+    private final int turn;
+    private final int source;
+    private final int target;
+    private final ChessPiece piece;
+    private final ChessPiece captured;
+    private final int capturedSquare;
+    private final int rookSource;
+    private final int rookTarget;
+    private final ChessPiece promotion;
+    private final boolean check;
+    private final boolean checkMate;
+
+    MoveDelta(int turn, int source, int target, ChessPiece piece, ChessPiece captured, int capturedSquare,
+            int rookSource, int rookTarget, ChessPiece promotion, boolean check, boolean checkMate) {
+        this.turn = turn;
+        this.source = source;
+        this.target = target;
+        this.piece = piece;
+        this.captured = captured;
+        this.capturedSquare = capturedSquare;
+        this.rookSource = rookSource;
+        this.rookTarget = rookTarget;
+        this.promotion = promotion;
+        this.check = check;
+        this.checkMate = checkMate;
+    }
+
+    /**
+     * Turn in which the move was made, as {@link ChessMatch#getTurn()} counts.
+     */
+    public int getTurn() {
+        return turn;
+    }
+
+    /**
+     * Squares are numbered as in {@link Move}.
+     */
+    public int getSource() {
+        return source;
+    }
+
+    public int getTarget() {
+        return target;
+    }
+
+    /**
+     * The piece that moved; for a replaced promotion, the piece that was replaced.
+     */
+    public ChessPiece getPiece() {
+        return piece;
+    }
+
+    public ChessPiece getCaptured() {
+        return captured;
+    }
+
+    /**
+     * Square the captured piece was taken from, or -1 without a capture.
+     */
+    public int getCapturedSquare() {
+        return capturedSquare;
+    }
+
+    public boolean isEnPassant() {
+        return captured != null && capturedSquare != target;
+    }
+
+    public boolean isCastling() {
+        return rookSource >= 0;
+    }
+
+    /**
+     * Square the castling rook left, or -1 if the move was not a castling.
+     */
+    public int getRookSource() {
+        return rookSource;
+    }
+
+    public int getRookTarget() {
+        return rookTarget;
+    }
+
+    /**
+     * Piece now standing on the target after a promotion, or null.
+     */
+    public ChessPiece getPromotion() {
+        return promotion;
+    }
+
+    public boolean isCheck() {
+        return check;
+    }
+
+    public boolean isCheckMate() {
+        return checkMate;
+    }
+
+    /**
+     * The move in the packed form of {@link Move}.
+     */
+    public int toMove() {
+        return Move.of(source, target, promotion != null ? promotion.getType().ordinal() : Move.PROMOTION_NONE);
+    }
+}
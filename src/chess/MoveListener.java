@@ -0,0 +1,20 @@
+package chess;
+
+/**
+ * Told about every move made with {@link ChessMatch#performChessMove} and
+ * every {@link ChessMatch#replacePromotedPiece}, on the thread that made it
+ * and after the match has been updated. Moves made with
+ * {@link ChessMatch#play(int)} are not reported.
+ *
+ * @author joana
+ */
+public interface MoveListener {
+    void moveMade(MoveDelta delta);
+
+    /**
+     * The promoted piece was replaced; source and target of the delta are
+     * the promotion square.
+     */
+    default void promotionReplaced(MoveDelta delta) {
+    }
+}
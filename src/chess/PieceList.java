@@ -0,0 +1,72 @@
+package chess;
+
+import java.util.Arrays;
+
+/**
+ * Pieces grouped by color and type. Each piece remembers its slot, so adding
+ * and removing are O(1): a removed piece's slot is filled with the last
+ * piece of its group. Iteration order within a group is therefore not stable.
+ *
+ * @author joana
+ */
+class PieceList {
+    private static final int TYPES = PieceType.values().length;
+
+    private final ChessPiece[][] pieces = new ChessPiece[2 * TYPES][];
+    private final int[] sizes = new int[2 * TYPES];
+
+    PieceList() {
+        for(int i = 0; i < pieces.length; i++) {
+            pieces[i] = new ChessPiece[i % TYPES == PieceType.PAWN.ordinal() ? 8 : 2];
+        }
+    }
+
+    private static int group(Color color, PieceType type) {
+        return color.ordinal() * TYPES + type.ordinal();
+    }
+
+    void add(ChessPiece piece) {
+        int group = group(piece.getColor(), piece.getType());
+        int size = sizes[group];
+        if(size == pieces[group].length) pieces[group] = Arrays.copyOf(pieces[group], size * 2);
+        pieces[group][size] = piece;
+        piece.slot = size;
+        sizes[group] = size + 1;
+    }
+
+    void remove(ChessPiece piece) {
+        int group = group(piece.getColor(), piece.getType());
+        int last = --sizes[group];
+        ChessPiece moved = pieces[group][last];
+        pieces[group][piece.slot] = moved;
+        moved.slot = piece.slot;
+        pieces[group][last] = null;
+        piece.slot = -1;
+    }
+
+    void clear() {
+        for(int group = 0; group < pieces.length; group++) {
+            for(int i = 0; i < sizes[group]; i++) {
+                pieces[group][i].slot = -1;
+                pieces[group][i] = null;
+            }
+            sizes[group] = 0;
+        }
+    }
+
+    int size(Color color, PieceType type) {
+        return sizes[group(color, type)];
+    }
+
+    ChessPiece get(Color color, PieceType type, int index) {
+        return pieces[group(color, type)][index];
+    }
+
+    int size(Color color) {
+        int size = 0;
+        for(int i = color.ordinal() * TYPES; i < (color.ordinal() + 1) * TYPES; i++) {
+            size += sizes[i];
+        }
+        return size;
+    }
+}
@@ -0,0 +1,24 @@
+package chess;
+
+/**
+ *
+ * @author joana
+ */
+public enum PieceType {
+    PAWN("P"),
+    KNIGHT("N"),
+    BISHOP("B"),
+    ROOK("R"),
+    QUEEN("Q"),
+    KING("K");
+    
+    private String letter;
+
+    private PieceType(String letter) {
+        this.letter = letter;
+    }
+
+    public String getLetter() {
+        return letter;
+    }
+}
@@ -0,0 +1,46 @@
+package chess;
+
+import java.util.SplittableRandom;
+
+/**
+ * Random keys whose exclusive or identifies a position. The generator seed
+ * is fixed, so a hash is the same in every run and can be stored on disk.
+ *
+ * @author joana
+ */
+final class Zobrist {
+    private static final int TYPES = PieceType.values().length;
+
+    private static final long[] PIECES = new long[2 * TYPES * 64];
+    private static final long[] CASTLING = new long[16];
+    private static final long[] EN_PASSANT = new long[8];
+    static final long BLACK_TO_MOVE;
+
+    static {
+        SplittableRandom random = new SplittableRandom(0x3A8F05C5L);
+        for(int i = 0; i < PIECES.length; i++) PIECES[i] = random.nextLong();
+        // no castling rights hash to zero, so positions without them need no key
+        for(int i = 1; i < CASTLING.length; i++) CASTLING[i] = random.nextLong();
+        for(int i = 0; i < EN_PASSANT.length; i++) EN_PASSANT[i] = random.nextLong();
+        BLACK_TO_MOVE = random.nextLong();
+    }
+
+    private Zobrist() {
+    }
+
+    static long piece(ChessPiece piece, int square) {
+        return PIECES[((piece.getColor().ordinal() * TYPES) + piece.getType().ordinal()) * 64 + square];
+    }
+
+    /**
+     * @param rights white kingside, white queenside, black kingside and black
+     * queenside as bits 0 to 3
+     */
+    static long castling(int rights) {
+        return CASTLING[rights];
+    }
+
+    static long enPassant(int column) {
+        return EN_PASSANT[column];
+    }
+}
@@ -0,0 +1,271 @@
+package chess.broadcast;
+
+import chess.ChessMatch;
+import chess.GameEvent;
+import chess.MoveDelta;
+import chess.MoveListener;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fans the {@link GameEvent}s of one match out to any number of
+ * {@link Spectator}s. Events are collected into batches, flushed when a
+ * batch is full or on a timer, and the same event array is handed to every
+ * spectator, so a popular game costs one array per batch rather than one
+ * board copy per viewer. Each spectator has a bounded queue of batches and
+ * its own delivery task; one whose queue is full is dropped instead of
+ * holding the others back. A spectator that joins late first gets a
+ * snapshot of the position the next batch continues from.
+ * <p>
+ * The broadcast listens to the moves of the match. Moves must be made on
+ * one thread at a time, as for any match; spectators are called on the
+ * delivery executor.
+ *
+ * @author joana
+ */
+public class MatchBroadcast implements AutoCloseable {
+    public static final int DEFAULT_BATCH_SIZE = 32;
+    public static final long DEFAULT_FLUSH_MILLIS = 50;
+    public static final int DEFAULT_QUEUE_LENGTH = 64;
+
+    // one timer thread flushes every broadcast in the JVM
+    private static final ScheduledExecutorService FLUSHER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "broadcast-flush");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final ChessMatch match;
+    private final Executor executor;
+    private final int queueLength;
+    private final ScheduledFuture<?> timer;
+    private final MoveListener listener = new MoveListener() {
+        @Override
+        public void moveMade(MoveDelta delta) {
+            accept(GameEvent.of(delta));
+        }
+
+        @Override
+        public void promotionReplaced(MoveDelta delta) {
+            accept(GameEvent.of(delta));
+        }
+    };
+
+    // guarded by this
+    private final long[] pending;
+    private int pendingCount;
+    private long sequence;
+    private String fen;
+    private Batch snapshot;
+    private Subscriber[] subscribers = new Subscriber[16];
+    private int subscriberCount;
+    private long dropped;
+    private boolean closed;
+
+    public MatchBroadcast(ChessMatch match) {
+        this(match, ForkJoinPool.commonPool(), DEFAULT_BATCH_SIZE, DEFAULT_FLUSH_MILLIS, DEFAULT_QUEUE_LENGTH);
+    }
+
+    /**
+     * @param executor runs the spectator callbacks
+     * @param batchSize events that are flushed at once without waiting for the timer
+     * @param flushMillis longest time an event waits for its batch
+     * @param queueLength batches a spectator may fall behind before it is dropped
+     */
+    public MatchBroadcast(ChessMatch match, Executor executor, int batchSize, long flushMillis, int queueLength) {
+        if(batchSize < 1 || flushMillis < 1 || queueLength < 1)
+            throw new IllegalArgumentException("Batch size, flush interval and queue length must be positive.");
+        this.match = match;
+        this.executor = executor;
+        this.queueLength = queueLength;
+        pending = new long[batchSize];
+        fen = match.toFen();
+        snapshot = new Batch(0, null, fen);
+        match.addMoveListener(listener);
+        timer = FLUSHER.scheduleWithFixedDelay(this::flush, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Starts delivering to {@code spectator}, beginning with a snapshot.
+     */
+    public synchronized void subscribe(Spectator spectator) {
+        Subscriber subscriber = new Subscriber(spectator);
+        if(closed) {
+            subscriber.close();
+            return;
+        }
+        subscriber.offer(snapshot);
+        if(subscriberCount == subscribers.length) subscribers = Arrays.copyOf(subscribers, subscriberCount * 2);
+        subscribers[subscriberCount++] = subscriber;
+    }
+
+    /**
+     * Stops delivering to {@code spectator}; batches already queued may still arrive.
+     */
+    public synchronized void unsubscribe(Spectator spectator) {
+        for(int i = 0; i < subscriberCount; i++) {
+            if(subscribers[i].spectator == spectator) {
+                removeAt(i);
+                return;
+            }
+        }
+    }
+
+    public synchronized int getSpectatorCount() {
+        return subscriberCount;
+    }
+
+    /**
+     * Spectators dropped so far for falling behind.
+     */
+    public synchronized long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * Events received from the match so far.
+     */
+    public synchronized long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Delivers what is pending, tells every spectator the broadcast ended
+     * and stops listening to the match.
+     */
+    @Override
+    public synchronized void close() {
+        if(closed) return;
+        timer.cancel(false);
+        flush();
+        closed = true;
+        match.removeMoveListener(listener);
+        for(int i = 0; i < subscriberCount; i++) {
+            subscribers[i].close();
+            subscribers[i] = null;
+        }
+        subscriberCount = 0;
+    }
+
+    private synchronized void accept(long event) {
+        if(closed) return;
+        pending[pendingCount++] = event;
+        sequence++;
+        fen = match.toFen();
+        if(pendingCount == pending.length) flush();
+    }
+
+    private synchronized void flush() {
+        if(pendingCount == 0) return;
+        Batch batch = new Batch(sequence - pendingCount, Arrays.copyOf(pending, pendingCount), null);
+        pendingCount = 0;
+        snapshot = new Batch(sequence, null, fen);
+        int i = 0;
+        while(i < subscriberCount) {
+            Subscriber subscriber = subscribers[i];
+            if(subscriber.offer(batch)) i++;
+            else {
+                removeAt(i);
+                subscriber.drop();
+                dropped++;
+            }
+        }
+    }
+
+    private void removeAt(int i) {
+        subscribers[i] = subscribers[--subscriberCount];
+        subscribers[subscriberCount] = null;
+    }
+
+    /**
+     * Events numbered from {@code sequence}, or a snapshot after {@code sequence} events.
+     */
+    private static class Batch {
+        final long sequence;
+        final long[] events;
+        final String fen;
+
+        Batch(long sequence, long[] events, String fen) {
+            this.sequence = sequence;
+            this.events = events;
+            this.fen = fen;
+        }
+    }
+
+    private class Subscriber implements Runnable {
+        private final Spectator spectator;
+        private final ArrayBlockingQueue<Batch> queue = new ArrayBlockingQueue<>(queueLength + 1);
+        private final AtomicInteger work = new AtomicInteger();
+        private volatile boolean dropped;
+        private volatile boolean closed;
+        // read and written by the delivery task only
+        private boolean done;
+
+        Subscriber(Spectator spectator) {
+            this.spectator = spectator;
+        }
+
+        boolean offer(Batch batch) {
+            if(!queue.offer(batch)) return false;
+            schedule();
+            return true;
+        }
+
+        void drop() {
+            dropped = true;
+            schedule();
+        }
+
+        void close() {
+            closed = true;
+            schedule();
+        }
+
+        private void schedule() {
+            if(work.getAndIncrement() == 0) executor.execute(this);
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+            do {
+                drain();
+                missed = work.addAndGet(-missed);
+            } while(missed != 0);
+        }
+
+        private void drain() {
+            if(done) return;
+            try {
+                if(dropped) {
+                    queue.clear();
+                    done = true;
+                    spectator.onDropped();
+                    return;
+                }
+                Batch batch;
+                while((batch = queue.poll()) != null) {
+                    if(batch.fen != null) spectator.onSnapshot(batch.fen, batch.sequence);
+                    else spectator.onEvents(batch.sequence, batch.events);
+                    if(dropped) return;
+                }
+                if(closed) {
+                    done = true;
+                    spectator.onClosed();
+                }
+            } catch(RuntimeException e) {
+                // a failing spectator is treated like a slow one
+                done = true;
+                queue.clear();
+                unsubscribe(spectator);
+            }
+        }
+    }
+}
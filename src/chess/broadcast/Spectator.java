@@ -0,0 +1,36 @@
+package chess.broadcast;
+
+import chess.GameEvent;
+
+/**
+ * Follows a match through a {@link MatchBroadcast}. Calls for one spectator
+ * never overlap and come in order: first a snapshot, then batches of
+ * events continuing exactly where the snapshot left off.
+ *
+ * @author joana
+ */
+public interface Spectator {
+    /**
+     * The position in Forsyth-Edwards Notation after {@code sequence} events.
+     */
+    void onSnapshot(String fen, long sequence);
+
+    /**
+     * {@link GameEvent}s numbered from {@code firstSequence} on. The array is
+     * shared with every other spectator and must not be changed.
+     */
+    void onEvents(long firstSequence, long[] events);
+
+    /**
+     * The spectator fell more than the queue length behind and was removed.
+     * It may subscribe again and catch up from a new snapshot.
+     */
+    default void onDropped() {
+    }
+
+    /**
+     * The broadcast was closed; nothing more will be delivered.
+     */
+    default void onClosed() {
+    }
+}
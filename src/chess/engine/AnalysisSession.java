@@ -0,0 +1,249 @@
+package chess.engine;
+
+import chess.ChessMatch;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs analyses in the background and publishes their progress to any
+ * number of {@link Flow.Subscriber}s. Updates are coalesced per subscriber:
+ * one that has not requested more only keeps the newest update, which
+ * replaces whatever it had not received yet, so a slow subscriber never
+ * builds up a queue. A subscriber that joins mid-analysis first gets the
+ * latest update.
+ * <p>
+ * Each analysis searches its own copy of the position, so the match passed
+ * to {@link #analyze(ChessMatch, SearchLimits)} may be used again right away.
+ *
+ * @author joana
+ */
+public class AnalysisSession implements Flow.Publisher<AnalysisUpdate>, AutoCloseable {
+    private final Search search = new Search();
+    private final ExecutorService searchThread = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "analysis-search");
+        t.setDaemon(true);
+        return t;
+    });
+    private final Executor deliveryExecutor;
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private volatile AnalysisUpdate latest;
+    private Future<?> running;
+    private boolean closed;
+
+    // written and read on the search thread only
+    private String fen;
+    private SearchInfo[] lines = new SearchInfo[0];
+    private int lineCount;
+
+    public AnalysisSession() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param deliveryExecutor runs the subscriber callbacks
+     */
+    public AnalysisSession(Executor deliveryExecutor) {
+        this.deliveryExecutor = deliveryExecutor;
+        search.setListener(this::lineCompleted);
+    }
+
+    /**
+     * Stops the current analysis, if any, and starts analyzing the position
+     * of {@code match}. Set {@link SearchLimits#setMultiPv(int)} for several lines.
+     */
+    public synchronized void analyze(ChessMatch match, SearchLimits limits) {
+        if(closed) throw new IllegalStateException("The session is closed.");
+        String position = match.toFen();
+        stopAndWait();
+        running = searchThread.submit(() -> run(position, limits));
+    }
+
+    /**
+     * Ends the current analysis early; subscribers still get its final update.
+     */
+    public synchronized void stop() {
+        if(running == null) return;
+        // a search that has not started yet would clear the request, so wait for it
+        while(!search.isRunning() && !running.isDone()) Thread.onSpinWait();
+        search.stop();
+    }
+
+    /**
+     * Stops the analysis and completes every subscriber once it has
+     * received the final update.
+     */
+    @Override
+    public synchronized void close() {
+        if(closed) return;
+        closed = true;
+        stopAndWait();
+        searchThread.shutdown();
+        for(Subscription s : subscriptions) s.complete();
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super AnalysisUpdate> subscriber) {
+        Objects.requireNonNull(subscriber);
+        Subscription subscription = new Subscription(subscriber);
+        subscriptions.add(subscription);
+        AnalysisUpdate update = latest;
+        if(update != null) subscription.offer(update);
+        synchronized(this) {
+            if(closed) subscription.complete();
+        }
+        subscription.schedule();
+    }
+
+    private void stopAndWait() {
+        if(running == null) return;
+        stop();
+        try {
+            running.get();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch(ExecutionException e) {
+            // the search thread already reported it as the final update
+        }
+        running = null;
+    }
+
+    private void run(String position, SearchLimits limits) {
+        ChessMatch match = new ChessMatch(position);
+        fen = position;
+        int[] moves = new int[256];
+        lineCount = Math.min(Math.max(limits.getMultiPv(), 1), match.legalMoves(moves));
+        lines = new SearchInfo[lineCount];
+        try {
+            SearchInfo result = search.search(match, limits);
+            // stopped before the first depth was complete, which only the result knows
+            if(lineCount > 0 && lines[0] == null) lines[0] = result;
+        } finally {
+            publish(true);
+        }
+    }
+
+    private void lineCompleted(SearchInfo info) {
+        lines[info.getMultiPv() - 1] = info;
+        // the other lines of a depth follow right away, so publish once the depth is complete
+        if(info.getMultiPv() == lineCount) publish(false);
+    }
+
+    private void publish(boolean finished) {
+        List<SearchInfo> list = new ArrayList<>(lineCount);
+        for(SearchInfo line : lines) {
+            if(line != null) list.add(line);
+        }
+        AnalysisUpdate update = new AnalysisUpdate(fen, list, finished);
+        latest = update;
+        for(Subscription s : subscriptions) s.offer(update);
+    }
+
+    /**
+     * Delivery to one subscriber. Signals run on the delivery executor, one
+     * at a time, in a drain loop that any thread may start.
+     */
+    private class Subscription implements Flow.Subscription, Runnable {
+        private final Flow.Subscriber<? super AnalysisUpdate> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicReference<AnalysisUpdate> pending = new AtomicReference<>();
+        private final AtomicInteger work = new AtomicInteger();
+        private volatile boolean cancelled;
+        private volatile boolean completing;
+        private volatile Throwable error;
+        private boolean subscribed;
+        private boolean done;
+
+        Subscription(Flow.Subscriber<? super AnalysisUpdate> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        void offer(AnalysisUpdate update) {
+            pending.set(update);
+            schedule();
+        }
+
+        void complete() {
+            completing = true;
+            schedule();
+        }
+
+        void schedule() {
+            if(work.getAndIncrement() == 0) deliveryExecutor.execute(this);
+        }
+
+        @Override
+        public void request(long n) {
+            if(n <= 0) {
+                error = new IllegalArgumentException("Non-positive request: " + n);
+            } else {
+                demand.accumulateAndGet(n, (a, b) -> a + b < 0 ? Long.MAX_VALUE : a + b);
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            subscriptions.remove(this);
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+            do {
+                try {
+                    drain();
+                } catch(RuntimeException e) {
+                    // a subscriber that throws is cancelled, as the Flow rules allow
+                    cancel();
+                }
+                missed = work.addAndGet(-missed);
+            } while(missed != 0);
+        }
+
+        private void drain() {
+            if(done) return;
+            if(!subscribed) {
+                subscribed = true;
+                subscriber.onSubscribe(this);
+            }
+            if(cancelled) {
+                done = true;
+                return;
+            }
+            if(error != null) {
+                done = true;
+                cancel();
+                subscriber.onError(error);
+                return;
+            }
+            while(demand.get() > 0) {
+                AnalysisUpdate update = pending.getAndSet(null);
+                if(update == null) break;
+                if(demand.get() != Long.MAX_VALUE) demand.decrementAndGet();
+                subscriber.onNext(update);
+                if(cancelled) {
+                    done = true;
+                    return;
+                }
+            }
+            if(completing && pending.get() == null) {
+                done = true;
+                subscriptions.remove(this);
+                subscriber.onComplete();
+            }
+        }
+    }
+}
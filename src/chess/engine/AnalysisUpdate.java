@@ -0,0 +1,61 @@
+package chess.engine;
+
+import java.util.List;
+
+/**
+ * State of an analysis published by {@link AnalysisSession}: the best lines
+ * found so far, best first, for the position given as a FEN.
+ *
+ * @author joana
+ */
+public class AnalysisUpdate {
+    private final String fen;
+    private final List<SearchInfo> lines;
+    private final boolean finished;
+
+    public AnalysisUpdate(String fen, List<SearchInfo> lines, boolean finished) {
+        this.fen = fen;
+        this.lines = List.copyOf(lines);
+        this.finished = finished;
+    }
+
+    public String getFen() {
+        return fen;
+    }
+
+    /**
+     * One entry per line; empty when the position has no legal moves.
+     */
+    public List<SearchInfo> getLines() {
+        return lines;
+    }
+
+    /**
+     * Best line, or null when there is none.
+     */
+    public SearchInfo getBest() {
+        return lines.isEmpty() ? null : lines.get(0);
+    }
+
+    public int getDepth() {
+        return lines.isEmpty() ? 0 : lines.get(0).getDepth();
+    }
+
+    public long getNodesPerSecond() {
+        return lines.isEmpty() ? 0 : lines.get(lines.size() - 1).getNodesPerSecond();
+    }
+
+    /**
+     * True for the last update of an analysis, sent when its search ended.
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(finished ? "final " : "").append(fen);
+        for(SearchInfo line : lines) sb.append("\n  ").append(line.getMultiPv()).append(": ").append(line);
+        return sb.toString();
+    }
+}
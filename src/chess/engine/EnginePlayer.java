@@ -0,0 +1,155 @@
+package chess.engine;
+
+import chess.ChessMatch;
+import chess.Move;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Plays one side of a game with a fixed time per move and ponders while
+ * the opponent thinks: after each of its moves it plays the reply it
+ * expects, the second move of its principal variation, on a copy of the
+ * position and searches on a background thread. When the opponent makes
+ * that move the search just goes on until the move time has passed since
+ * it started, so the answer often comes at once; otherwise it is stopped
+ * and the real position is searched. The transposition table is shared by
+ * both searches, so it is warm either way.
+ * <p>
+ * Moves are asked for on one thread; the matches passed in are only read
+ * on it, never by the background thread.
+ *
+ * @author joana
+ */
+public class EnginePlayer implements AutoCloseable {
+    private final Search search = new Search();
+    private final ExecutorService searchThread = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "engine-ponder");
+        t.setDaemon(true);
+        return t;
+    });
+    private final long moveTime;
+    private final boolean ponder;
+
+    private Future<SearchInfo> pondering;
+    private long ponderHash;
+    private long ponderStart;
+    private int ponderHits;
+    private int ponderMisses;
+    private SearchInfo lastInfo;
+
+    /**
+     * @param moveTime milliseconds to think per move
+     * @param ponder whether to search while the opponent thinks
+     */
+    public EnginePlayer(long moveTime, boolean ponder) {
+        this.moveTime = Math.max(1, moveTime);
+        this.ponder = ponder;
+    }
+
+    public Search getSearch() {
+        return search;
+    }
+
+    public int getPonderHits() {
+        return ponderHits;
+    }
+
+    public int getPonderMisses() {
+        return ponderMisses;
+    }
+
+    /**
+     * Result of the search that chose the last move.
+     */
+    public SearchInfo getLastInfo() {
+        return lastInfo;
+    }
+
+    /**
+     * The move to play in the position of {@code match}, or
+     * {@link Move#NONE} if there is none. Then starts pondering on the
+     * expected reply.
+     */
+    public int chooseMove(ChessMatch match) {
+        SearchInfo info = null;
+        if(pondering != null) {
+            if(match.getHash() == ponderHash) {
+                ponderHits++;
+                long left = moveTime - (System.nanoTime() - ponderStart) / 1000000;
+                info = finish(Math.max(0, left));
+            } else {
+                ponderMisses++;
+                finish(0);
+            }
+        }
+        if(info == null) {
+            ChessMatch position = new ChessMatch(match.toFen());
+            SearchLimits limits = new SearchLimits();
+            limits.setMoveTime(moveTime);
+            info = await(searchThread.submit(() -> search.search(position, limits)));
+        }
+        lastInfo = info;
+        if(ponder) startPondering(match.toFen(), info);
+        return info.getBestMove();
+    }
+
+    /**
+     * Stops pondering, if it is going on, and the background thread.
+     */
+    @Override
+    public void close() {
+        if(pondering != null) finish(0);
+        searchThread.shutdown();
+    }
+
+    private void startPondering(String fen, SearchInfo info) {
+        int[] pv = info.getPrincipalVariation();
+        if(pv.length < 2) return;
+        ChessMatch position = new ChessMatch(fen);
+        position.play(pv[0]);
+        position.play(pv[1]);
+        if(position.legalMoves(new int[256]) == 0) return;
+        ponderHash = position.getHash();
+        SearchLimits limits = new SearchLimits();
+        limits.setInfinite(true);
+        ponderStart = System.nanoTime();
+        pondering = searchThread.submit(() -> search.search(position, limits));
+    }
+
+    /**
+     * Lets the ponder search run for up to {@code millis} more, then stops
+     * it and returns its result.
+     */
+    private SearchInfo finish(long millis) {
+        Future<SearchInfo> running = pondering;
+        pondering = null;
+        try {
+            if(millis > 0) return running.get(millis, TimeUnit.MILLISECONDS);
+        } catch(TimeoutException e) {
+            // the move time is up
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch(ExecutionException e) {
+            throw new IllegalStateException("The search failed.", e.getCause());
+        }
+        // a search that has not started yet would clear the request, so wait for it
+        while(!search.isRunning() && !running.isDone()) Thread.onSpinWait();
+        search.stop();
+        return await(running);
+    }
+
+    private static SearchInfo await(Future<SearchInfo> future) {
+        try {
+            return future.get();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while searching.", e);
+        } catch(ExecutionException e) {
+            throw new IllegalStateException("The search failed.", e.getCause());
+        }
+    }
+}
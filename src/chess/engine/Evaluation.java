@@ -0,0 +1,239 @@
+package chess.engine;
+
+import chess.ChessMatch;
+import chess.ChessPiece;
+import chess.Color;
+import chess.PieceType;
+
+/**
+ * Static evaluation: material, piece-square tables, pawn structure (doubled,
+ * isolated and passed pawns), the pawn shield in front of a castled king
+ * and the attacks on the squares around each king, in centipawns from the point of view of the player to move.
+ *
+ * @author joana
+ */
+public class Evaluation {
+    public static final int PAWN = 0;
+    public static final int KNIGHT = 1;
+    public static final int BISHOP = 2;
+    public static final int ROOK = 3;
+    public static final int QUEEN = 4;
+    public static final int KING = 5;
+
+    public static final int[] VALUES = {100, 320, 330, 500, 900, 0};
+
+    // tables are written from white's side, row 0 being rank 8
+    static final int[][] TABLES = {
+        {
+             0,  0,  0,  0,  0,  0,  0,  0,
+            50, 50, 50, 50, 50, 50, 50, 50,
+            10, 10, 20, 30, 30, 20, 10, 10,
+             5,  5, 10, 25, 25, 10,  5,  5,
+             0,  0,  0, 20, 20,  0,  0,  0,
+             5, -5,-10,  0,  0,-10, -5,  5,
+             5, 10, 10,-20,-20, 10, 10,  5,
+             0,  0,  0,  0,  0,  0,  0,  0
+        },
+        {
+           -50,-40,-30,-30,-30,-30,-40,-50,
+           -40,-20,  0,  0,  0,  0,-20,-40,
+           -30,  0, 10, 15, 15, 10,  0,-30,
+           -30,  5, 15, 20, 20, 15,  5,-30,
+           -30,  0, 15, 20, 20, 15,  0,-30,
+           -30,  5, 10, 15, 15, 10,  5,-30,
+           -40,-20,  0,  5,  5,  0,-20,-40,
+           -50,-40,-30,-30,-30,-30,-40,-50
+        },
+        {
+           -20,-10,-10,-10,-10,-10,-10,-20,
+           -10,  0,  0,  0,  0,  0,  0,-10,
+           -10,  0,  5, 10, 10,  5,  0,-10,
+           -10,  5,  5, 10, 10,  5,  5,-10,
+           -10,  0, 10, 10, 10, 10,  0,-10,
+           -10, 10, 10, 10, 10, 10, 10,-10,
+           -10,  5,  0,  0,  0,  0,  5,-10,
+           -20,-10,-10,-10,-10,-10,-10,-20
+        },
+        {
+             0,  0,  0,  0,  0,  0,  0,  0,
+             5, 10, 10, 10, 10, 10, 10,  5,
+            -5,  0,  0,  0,  0,  0,  0, -5,
+            -5,  0,  0,  0,  0,  0,  0, -5,
+            -5,  0,  0,  0,  0,  0,  0, -5,
+            -5,  0,  0,  0,  0,  0,  0, -5,
+            -5,  0,  0,  0,  0,  0,  0, -5,
+             0,  0,  0,  5,  5,  0,  0,  0
+        },
+        {
+           -20,-10,-10, -5, -5,-10,-10,-20,
+           -10,  0,  0,  0,  0,  0,  0,-10,
+           -10,  0,  5,  5,  5,  5,  0,-10,
+            -5,  0,  5,  5,  5,  5,  0, -5,
+             0,  0,  5,  5,  5,  5,  0, -5,
+           -10,  5,  5,  5,  5,  5,  0,-10,
+           -10,  0,  5,  0,  0,  0,  0,-10,
+           -20,-10,-10, -5, -5,-10,-10,-20
+        },
+        {
+           -30,-40,-40,-50,-50,-40,-40,-30,
+           -30,-40,-40,-50,-50,-40,-40,-30,
+           -30,-40,-40,-50,-50,-40,-40,-30,
+           -30,-40,-40,-50,-50,-40,-40,-30,
+           -20,-30,-30,-40,-40,-30,-30,-20,
+           -10,-20,-20,-20,-20,-20,-20,-10,
+            20, 20,  0,  0,  0,  0, 20, 20,
+            20, 30, 10,  0,  0, 10, 30, 20
+        }
+    };
+
+    private static final PieceType[] PIECE_TYPES = PieceType.values();
+
+    private static final int DOUBLED = -15;
+    private static final int ISOLATED = -12;
+    // by rows advanced from the pawn's starting row
+    private static final int[] PASSED = {0, 5, 10, 20, 35, 60, 100, 0};
+    private static final int SHIELD = 10;
+    // per enemy attack on a square next to the king
+    private static final int KING_ZONE = -6;
+
+    private static final long[] FILES = new long[8];
+    private static final long[] ADJACENT_FILES = new long[8];
+    // squares that must be free of enemy pawns for a pawn on the square to be passed
+    private static final long[] WHITE_PASSED = new long[64];
+    private static final long[] BLACK_PASSED = new long[64];
+    private static final long[] KING_ZONES = new long[64];
+
+    static {
+        for(int square = 0; square < 64; square++) FILES[square & 7] |= 1L << square;
+        for(int file = 0; file < 8; file++) {
+            if(file > 0) ADJACENT_FILES[file] |= FILES[file - 1];
+            if(file < 7) ADJACENT_FILES[file] |= FILES[file + 1];
+        }
+        for(int square = 0; square < 64; square++) {
+            long span = FILES[square & 7] | ADJACENT_FILES[square & 7];
+            int row = square >>> 3;
+            // white moves towards row 0, black towards row 7
+            WHITE_PASSED[square] = span & ((1L << (row * 8)) - 1);
+            BLACK_PASSED[square] = row == 7 ? 0 : span & -(1L << ((row + 1) * 8));
+            for(int r = Math.max(0, row - 1); r <= Math.min(7, row + 1); r++) {
+                for(int c = Math.max(0, (square & 7) - 1); c <= Math.min(7, (square & 7) + 1); c++) {
+                    if(r * 8 + c != square) KING_ZONES[square] |= 1L << (r * 8 + c);
+                }
+            }
+        }
+    }
+
+    private Evaluation() {
+    }
+
+    public static int evaluate(ChessMatch match) {
+        return evaluate(match, null);
+    }
+
+    /**
+     * Evaluates with pawn structure scores taken from, and added to, a cache.
+     *
+     * @param pawnCache may be null to analyze the pawns every time
+     */
+    public static int evaluate(ChessMatch match, PawnCache pawnCache) {
+        int score = 0;
+        for(PieceType pieceType : PIECE_TYPES) {
+            int type = pieceType.ordinal();
+            for(int i = match.getPieceCount(Color.WHITE, pieceType) - 1; i >= 0; i--) {
+                score += VALUES[type] + TABLES[type][match.getPiece(Color.WHITE, pieceType, i).getSquare()];
+            }
+            for(int i = match.getPieceCount(Color.BLACK, pieceType) - 1; i >= 0; i--) {
+                score -= VALUES[type] + TABLES[type][match.getPiece(Color.BLACK, pieceType, i).getSquare() ^ 56];
+            }
+        }
+
+        long white;
+        long black;
+        if(pawnCache != null) {
+            long key = match.getPawnHash();
+            int slot = pawnCache.slot(key);
+            if(!pawnCache.probe(slot, key)) {
+                white = pawns(match, Color.WHITE);
+                black = pawns(match, Color.BLACK);
+                pawnCache.store(slot, key, pawnStructure(white, black), white, black);
+            }
+            score += pawnCache.score(slot);
+            white = pawnCache.whitePawns(slot);
+            black = pawnCache.blackPawns(slot);
+        } else {
+            white = pawns(match, Color.WHITE);
+            black = pawns(match, Color.BLACK);
+            score += pawnStructure(white, black);
+        }
+        score += SHIELD * (shield(match, Color.WHITE, white) - shield(match, Color.BLACK, black));
+        score += KING_ZONE * (kingZone(match, Color.WHITE) - kingZone(match, Color.BLACK));
+
+        return match.getCurrentPlayer() == Color.WHITE ? score : -score;
+    }
+
+    private static long pawns(ChessMatch match, Color color) {
+        long pawns = 0;
+        for(int i = match.getPieceCount(color, PieceType.PAWN) - 1; i >= 0; i--) {
+            pawns |= 1L << match.getPiece(color, PieceType.PAWN, i).getSquare();
+        }
+        return pawns;
+    }
+
+    /**
+     * Doubled, isolated and passed pawns of both sides, from white's side.
+     */
+    static int pawnStructure(long white, long black) {
+        int score = 0;
+        for(int file = 0; file < 8; file++) {
+            int whiteCount = Long.bitCount(white & FILES[file]);
+            int blackCount = Long.bitCount(black & FILES[file]);
+            if(whiteCount > 1) score += DOUBLED * (whiteCount - 1);
+            if(blackCount > 1) score -= DOUBLED * (blackCount - 1);
+            if(whiteCount > 0 && (white & ADJACENT_FILES[file]) == 0) score += ISOLATED * whiteCount;
+            if(blackCount > 0 && (black & ADJACENT_FILES[file]) == 0) score -= ISOLATED * blackCount;
+        }
+        for(long bits = white; bits != 0; bits &= bits - 1) {
+            int square = Long.numberOfTrailingZeros(bits);
+            // pawns only stand on the first or last rank in hand-made positions
+            if((black & WHITE_PASSED[square]) == 0) score += PASSED[Math.max(0, 6 - (square >>> 3))];
+        }
+        for(long bits = black; bits != 0; bits &= bits - 1) {
+            int square = Long.numberOfTrailingZeros(bits);
+            if((white & BLACK_PASSED[square]) == 0) score -= PASSED[Math.max(0, (square >>> 3) - 1)];
+        }
+        return score;
+    }
+
+    /**
+     * Own pawns on the three files around a king that has castled to a wing,
+     * one or two rows in front of it.
+     */
+    private static int shield(ChessMatch match, Color color, long pawns) {
+        int king = match.getPiece(color, PieceType.KING, 0).getSquare();
+        int row = king >>> 3;
+        int file = king & 7;
+        if(file >= 3 && file <= 4) return 0;
+        if(color == Color.WHITE ? row < 6 : row > 1) return 0;
+        long files = FILES[file] | ADJACENT_FILES[file];
+        long front = color == Color.WHITE ? 0xFFFFL << ((row - 2) * 8) : 0xFFFFL << ((row + 1) * 8);
+        return Long.bitCount(pawns & files & front);
+    }
+
+    /**
+     * Enemy attacks on the squares next to the king, counting every attacker.
+     */
+    private static int kingZone(ChessMatch match, Color color) {
+        Color opponent = color == Color.WHITE ? Color.BLACK : Color.WHITE;
+        long zone = KING_ZONES[match.getPiece(color, PieceType.KING, 0).getSquare()] & match.getAttackedSquares(opponent);
+        int attacks = 0;
+        for(; zone != 0; zone &= zone - 1) attacks += match.getAttackerCount(opponent, Long.numberOfTrailingZeros(zone));
+        return attacks;
+    }
+
+    /**
+     * Index of the piece's type in {@link #VALUES}, the order of {@link PieceType}.
+     */
+    public static int typeOf(ChessPiece piece) {
+        return piece.getType().ordinal();
+    }
+}
@@ -0,0 +1,432 @@
+package chess.engine;
+
+import chess.ChessMatch;
+import chess.Color;
+import chess.PieceType;
+import exceptions.ChessException;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Tunes the piece values and piece-square tables of {@link Evaluation} the
+ * Texel way: positions are labelled with the result of their game, the
+ * evaluation is turned into an expected result by a sigmoid, and the mean
+ * squared error between the two is brought down by gradient descent.
+ * <p>
+ * Material and piece-square scores are sums of table entries, so every
+ * position is loaded once into flat primitive arrays as the list of its
+ * pieces plus the rest of its evaluation, which tuning leaves alone. An
+ * epoch then only adds up table entries; no match is touched and nothing is
+ * allocated per position. The positions are cut into one range per thread
+ * of the pool and every range keeps its own gradient, summed at the end.
+ *
+ * @author joana
+ */
+public class EvaluationTuner {
+    private static final int TYPES = PieceType.values().length;
+    private static final int ENTRIES = TYPES * 64;
+    private static final int KING = PieceType.KING.ordinal();
+    // lines parsed in parallel at a time while loading
+    private static final int LOAD_BATCH = 16384;
+    private static final int MAX_PIECES = 32;
+    private static final double LN10_400 = Math.log(10) / 400;
+    private static final double BETA1 = 0.9;
+    private static final double BETA2 = 0.999;
+
+    private final ForkJoinPool pool;
+
+    // per position: result for white in half points, the evaluation outside the tables
+    // from white's side, and where its pieces start in the pieces array
+    private byte[] results = new byte[1024];
+    private short[] rests = new short[1024];
+    private int[] offsets = new int[1025];
+    // type * 64 + square seen from the piece's own side, plus ENTRIES for black pieces
+    private short[] pieces = new short[1024 * MAX_PIECES];
+    private int size;
+    private long skipped;
+
+    private final double[] values = new double[TYPES];
+    private final double[] tables = new double[ENTRIES];
+    // value plus table entry, what the epochs actually read
+    private final double[] weights = new double[ENTRIES];
+    private double scaling = 1;
+
+    private Range[] ranges = new Range[0];
+    private final double[] gradient = new double[ENTRIES];
+    private final double[] moments = new double[TYPES + ENTRIES];
+    private final double[] velocities = new double[TYPES + ENTRIES];
+    private int steps;
+
+    public EvaluationTuner(ForkJoinPool pool) {
+        this.pool = pool;
+        for(int type = 0; type < TYPES; type++) {
+            values[type] = Evaluation.VALUES[type];
+            for(int square = 0; square < 64; square++) tables[type * 64 + square] = Evaluation.TABLES[type][square];
+        }
+    }
+
+    /**
+     * Reads positions, one per line: a FEN followed by the result of the
+     * game, written as {@code 1-0}, {@code 0-1} or {@code 1/2-1/2}, or as
+     * white's score 1, 0.5 or 0, optionally in brackets or quoted in an EPD
+     * {@code c9} operation. Lines that cannot be read are counted in
+     * {@link #getSkipped()}. Returns the number of positions loaded.
+     */
+    public int load(BufferedReader in) throws IOException {
+        String[] lines = new String[LOAD_BATCH];
+        Batch[] batches = new Batch[pool.getParallelism()];
+        for(int i = 0; i < batches.length; i++) batches[i] = new Batch(lines);
+        int before = size;
+        int count;
+        do {
+            count = 0;
+            String line;
+            while(count < LOAD_BATCH && (line = in.readLine()) != null) {
+                if(!line.isBlank()) lines[count++] = line;
+            }
+            int per = (count + batches.length - 1) / batches.length;
+            for(int i = 0; i < batches.length; i++) {
+                batches[i].reinitialize();
+                batches[i].from = Math.min(count, i * per);
+                batches[i].to = Math.min(count, (i + 1) * per);
+            }
+            pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    ForkJoinTask.invokeAll(batches);
+                }
+            });
+            for(Batch batch : batches) append(batch);
+        } while(count == LOAD_BATCH);
+        ranges = new Range[0];
+        return size - before;
+    }
+
+    private void append(Batch batch) {
+        for(int i = 0; i < batch.count; i++) {
+            if(size + 1 == results.length) {
+                results = Arrays.copyOf(results, results.length * 2);
+                rests = Arrays.copyOf(rests, rests.length * 2);
+                offsets = Arrays.copyOf(offsets, offsets.length * 2 + 1);
+            }
+            int start = offsets[size];
+            int length = batch.lengths[i];
+            if(start + length > pieces.length) pieces = Arrays.copyOf(pieces, Math.max(pieces.length * 2, start + length));
+            System.arraycopy(batch.pieces, i * MAX_PIECES, pieces, start, length);
+            results[size] = batch.results[i];
+            rests[size] = batch.rests[i];
+            offsets[++size] = start + length;
+        }
+        skipped += batch.skipped;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getSkipped() {
+        return skipped;
+    }
+
+    public double getScaling() {
+        return scaling;
+    }
+
+    /**
+     * Sets K, the steepness of the sigmoid: a score of {@code 400 / K}
+     * centipawns is expected to win ten times as often as it loses.
+     */
+    public void setScaling(double scaling) {
+        this.scaling = scaling;
+    }
+
+    /**
+     * Picks the K that fits the current parameters best, by golden-section
+     * search in [lower, upper], and returns it.
+     */
+    public double fitScaling(double lower, double upper) {
+        final double ratio = (Math.sqrt(5) - 1) / 2;
+        double a = lower;
+        double b = upper;
+        double c = b - ratio * (b - a);
+        double d = a + ratio * (b - a);
+        scaling = c;
+        double errorC = error();
+        scaling = d;
+        double errorD = error();
+        while(b - a > 1e-4) {
+            if(errorC < errorD) {
+                b = d;
+                d = c;
+                errorD = errorC;
+                c = b - ratio * (b - a);
+                scaling = c;
+                errorC = error();
+            } else {
+                a = c;
+                c = d;
+                errorC = errorD;
+                d = a + ratio * (b - a);
+                scaling = d;
+                errorD = error();
+            }
+        }
+        scaling = (a + b) / 2;
+        return scaling;
+    }
+
+    /**
+     * Mean squared error of the current parameters.
+     */
+    public double error() {
+        return pass(false);
+    }
+
+    /**
+     * Runs one epoch: a pass over every position and one Adam step on the
+     * values and tables with the given learning rate, in centipawns. The
+     * king's value is left at zero since every position has one of each.
+     * Returns the error measured during the pass, before the step.
+     */
+    public double epoch(double rate) {
+        double error = pass(true);
+        steps++;
+        double correction1 = 1 - Math.pow(BETA1, steps);
+        double correction2 = 1 - Math.pow(BETA2, steps);
+        for(int i = 0; i < TYPES + ENTRIES; i++) {
+            double g;
+            if(i < TYPES) {
+                if(i == KING) continue;
+                g = 0;
+                for(int square = 0; square < 64; square++) g += gradient[i * 64 + square];
+            } else g = gradient[i - TYPES];
+            moments[i] = BETA1 * moments[i] + (1 - BETA1) * g;
+            velocities[i] = BETA2 * velocities[i] + (1 - BETA2) * g * g;
+            double step = rate * (moments[i] / correction1) / (Math.sqrt(velocities[i] / correction2) + 1e-8);
+            if(i < TYPES) values[i] -= step;
+            else tables[i - TYPES] -= step;
+        }
+        return error;
+    }
+
+    private double pass(boolean gradients) {
+        for(int type = 0; type < TYPES; type++) {
+            for(int square = 0; square < 64; square++) weights[type * 64 + square] = values[type] + tables[type * 64 + square];
+        }
+        int threads = pool.getParallelism();
+        if(ranges.length != threads) {
+            ranges = new Range[threads];
+            int per = (size + threads - 1) / threads;
+            for(int i = 0; i < threads; i++) ranges[i] = new Range(Math.min(size, i * per), Math.min(size, (i + 1) * per));
+        }
+        for(Range range : ranges) {
+            range.reinitialize();
+            range.gradients = gradients;
+        }
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                ForkJoinTask.invokeAll(ranges);
+            }
+        });
+        double error = 0;
+        if(gradients) Arrays.fill(gradient, 0);
+        for(Range range : ranges) {
+            error += range.error;
+            if(gradients) {
+                for(int i = 0; i < ENTRIES; i++) gradient[i] += range.gradient[i];
+            }
+        }
+        if(gradients) {
+            for(int i = 0; i < ENTRIES; i++) gradient[i] /= Math.max(1, size);
+        }
+        return error / Math.max(1, size);
+    }
+
+    /**
+     * Piece values, rounded, in the order of {@link PieceType}.
+     */
+    public int[] getValues() {
+        int[] rounded = new int[TYPES];
+        for(int type = 0; type < TYPES; type++) rounded[type] = (int) Math.round(values[type]);
+        return rounded;
+    }
+
+    /**
+     * Piece-square table of a type, rounded, from white's side with row 0
+     * being rank 8, as in {@link Evaluation}.
+     */
+    public int[] getTable(PieceType type) {
+        int[] rounded = new int[64];
+        for(int square = 0; square < 64; square++) rounded[square] = (int) Math.round(tables[type.ordinal() * 64 + square]);
+        return rounded;
+    }
+
+    /**
+     * Writes the rounded values and tables laid out like the constants of
+     * {@link Evaluation}, ready to be pasted over them.
+     */
+    public void write(Writer out) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        sb.append("    public static final int[] VALUES = {");
+        int[] rounded = getValues();
+        for(int type = 0; type < TYPES; type++) sb.append(type == 0 ? "" : ", ").append(rounded[type]);
+        sb.append("};\n\n    static final int[][] TABLES = {\n");
+        for(PieceType type : PieceType.values()) {
+            int[] table = getTable(type);
+            sb.append("        {\n");
+            for(int row = 0; row < 8; row++) {
+                sb.append("           ");
+                for(int col = 0; col < 8; col++) {
+                    sb.append(String.format("%3d", table[row * 8 + col]));
+                    if(row < 7 || col < 7) sb.append(',');
+                }
+                sb.append('\n');
+            }
+            sb.append(type.ordinal() < TYPES - 1 ? "        },\n" : "        }\n");
+        }
+        sb.append("    };\n");
+        out.write(sb.toString());
+    }
+
+    /**
+     * White's score in half points, or -1 when the token is not a result.
+     */
+    static int parseResult(String token) {
+        String result = token.replaceAll("[\\[\\]\"';]", "");
+        switch(result) {
+            case "1-0": case "1": case "1.0": return 2;
+            case "0-1": case "0": case "0.0": return 0;
+            case "1/2-1/2": case "0.5": case "1/2": return 1;
+            default: return -1;
+        }
+    }
+
+    /**
+     * A share of the positions, evaluated with the current weights; the
+     * error and gradient it adds up are its own until the pass sums them.
+     */
+    private class Range extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        private final double[] gradient = new double[ENTRIES];
+        private boolean gradients;
+        private double error;
+
+        Range(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            double[] weights = EvaluationTuner.this.weights;
+            short[] pieces = EvaluationTuner.this.pieces;
+            double k = scaling * LN10_400;
+            double sum = 0;
+            if(gradients) Arrays.fill(gradient, 0);
+            for(int p = from; p < to; p++) {
+                int start = offsets[p];
+                int end = offsets[p + 1];
+                double score = rests[p];
+                for(int i = start; i < end; i++) {
+                    int piece = pieces[i];
+                    if(piece < ENTRIES) score += weights[piece];
+                    else score -= weights[piece - ENTRIES];
+                }
+                double expected = 1 / (1 + Math.exp(-k * score));
+                double difference = expected - results[p] * 0.5;
+                sum += difference * difference;
+                if(gradients) {
+                    double slope = 2 * difference * expected * (1 - expected) * k;
+                    for(int i = start; i < end; i++) {
+                        int piece = pieces[i];
+                        if(piece < ENTRIES) gradient[piece] += slope;
+                        else gradient[piece - ENTRIES] -= slope;
+                    }
+                }
+            }
+            error = sum;
+        }
+    }
+
+    /**
+     * Parses a share of a batch of lines into fixed-size slots, one match
+     * per worker reused for every line.
+     */
+    private static class Batch extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final String[] lines;
+        private final ChessMatch match = new ChessMatch();
+        private final byte[] results = new byte[LOAD_BATCH];
+        private final short[] rests = new short[LOAD_BATCH];
+        private final byte[] lengths = new byte[LOAD_BATCH];
+        private final short[] pieces = new short[LOAD_BATCH * MAX_PIECES];
+        private int from;
+        private int to;
+        private int count;
+        private int skipped;
+
+        Batch(String[] lines) {
+            this.lines = lines;
+        }
+
+        @Override
+        protected void compute() {
+            count = 0;
+            skipped = 0;
+            for(int i = from; i < to; i++) {
+                if(parse(lines[i].trim())) count++;
+                else skipped++;
+            }
+        }
+
+        private boolean parse(String line) {
+            int space = line.lastIndexOf(' ');
+            if(space < 0) return false;
+            int result = parseResult(line.substring(space + 1));
+            if(result < 0) return false;
+            String fen = line.substring(0, space).trim();
+            // EPD lines carry the result in a c9 operation
+            if(fen.endsWith(" c9")) fen = fen.substring(0, fen.length() - 3);
+            try {
+                match.setPosition(fen);
+            } catch(ChessException e) {
+                return false;
+            }
+            int offset = count * MAX_PIECES;
+            int length = 0;
+            int linear = 0;
+            for(Color color : Color.values()) {
+                for(PieceType type : PieceType.values()) {
+                    int t = type.ordinal();
+                    for(int i = match.getPieceCount(color, type) - 1; i >= 0; i--) {
+                        if(length == MAX_PIECES) return false;
+                        int square = match.getPiece(color, type, i).getSquare();
+                        if(color == Color.WHITE) {
+                            pieces[offset + length++] = (short) (t * 64 + square);
+                            linear += Evaluation.VALUES[t] + Evaluation.TABLES[t][square];
+                        } else {
+                            pieces[offset + length++] = (short) (ENTRIES + t * 64 + (square ^ 56));
+                            linear -= Evaluation.VALUES[t] + Evaluation.TABLES[t][square ^ 56];
+                        }
+                    }
+                }
+            }
+            int score = Evaluation.evaluate(match);
+            if(match.getCurrentPlayer() == Color.BLACK) score = -score;
+            results[count] = (byte) result;
+            rests[count] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, score - linear));
+            lengths[count] = (byte) length;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package chess.engine;
+
+/**
+ * Outcome of a {@link MateSolver} run.
+ *
+ * @author joana
+ */
+public class MateResult {
+    public enum Status {
+        /** The side to move mates within the limit; the line shows how. */
+        PROVEN,
+        /** The defender can avoid mate within the limit. */
+        DISPROVEN,
+        /** The node limit was reached or the solver was stopped first. */
+        UNKNOWN
+    }
+
+    private final Status status;
+    private final int[] line;
+    private final long nodes;
+    private final long timeMillis;
+    private final long tableBytes;
+    private final int tableEntries;
+    private final int tableEntriesUsed;
+
+    MateResult(Status status, int[] line, long nodes, long timeMillis, long tableBytes, int tableEntries, int tableEntriesUsed) {
+        this.status = status;
+        this.line = line;
+        this.nodes = nodes;
+        this.timeMillis = timeMillis;
+        this.tableBytes = tableBytes;
+        this.tableEntries = tableEntries;
+        this.tableEntriesUsed = tableEntriesUsed;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * Moves from the position to mate, the defender choosing the longest
+     * resistance the solver found. Empty unless the mate was proven.
+     */
+    public int[] getLine() {
+        return line.clone();
+    }
+
+    /**
+     * Moves of the attacker until mate, or 0 unless the mate was proven.
+     */
+    public int getMateIn() {
+        return (line.length + 1) / 2;
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+
+    /**
+     * Size of the node table, which is allocated once and never grows.
+     */
+    public long getTableBytes() {
+        return tableBytes;
+    }
+
+    public int getTableEntries() {
+        return tableEntries;
+    }
+
+    public int getTableEntriesUsed() {
+        return tableEntriesUsed;
+    }
+}
@@ -0,0 +1,308 @@
+package chess.engine;
+
+import chess.ChessMatch;
+import java.util.Arrays;
+
+/**
+ * Proves or disproves a forced mate with depth-first proof-number search.
+ * Unlike alpha-beta it needs no evaluation: every node carries a proof
+ * number, how many leaves must still be shown to be mates, and a disproof
+ * number, how many escapes would refute it, and the search always expands
+ * the most proving position below thresholds that keep it depth-first.
+ * Narrow forced lines are therefore followed far deeper than a full-width
+ * search of the same size reaches.
+ * <p>
+ * Numbers are kept in a table of fixed size, two entries per bucket, and
+ * an entry holding a smaller subtree gives way to one holding a larger.
+ * Entries are keyed by {@link ChessMatch#getHash()} and by the plies left,
+ * since a position may be a mate in three but not in two. The match is
+ * searched with {@link ChessMatch#play(int)} and left as it was given.
+ *
+ * @author joana
+ */
+public class MateSolver {
+    public static final int DEFAULT_TABLE_ENTRIES = 1 << 20;
+
+    static final int INFINITE = 100_000_000;
+
+    private static final int MAX_PLIES = 255;
+    private static final int MAX_MOVES = 256;
+    // key, proof and disproof numbers, work, plies left and mate distance
+    private static final int ENTRY_BYTES = 8 + 4 + 4 + 4 + 2 + 2;
+    // results of expand for positions without children to search
+    private static final int DEFENDER_MATED = -1;
+    private static final int NO_MATE = -2;
+
+    private final long[] keys;
+    private final int[] proofs;
+    private final int[] disproofs;
+    private final int[] work;
+    private final short[] depths;
+    private final short[] distances;
+    private final int mask;
+
+    private final int[][] moves = new int[MAX_PLIES + 1][MAX_MOVES];
+    private final long[][] childKeys = new long[MAX_PLIES + 1][MAX_MOVES];
+    private ChessMatch match;
+    private boolean checksOnly;
+    private long nodes;
+    private long nodeLimit;
+    private boolean aborted;
+    private volatile boolean stopped;
+    private volatile boolean running;
+
+    public MateSolver() {
+        this(DEFAULT_TABLE_ENTRIES);
+    }
+
+    /**
+     * @param entries size of the node table, rounded up to a power of two
+     */
+    public MateSolver(int entries) {
+        int size = Integer.highestOneBit(Math.max(2, entries - 1)) << 1;
+        keys = new long[size];
+        proofs = new int[size];
+        disproofs = new int[size];
+        work = new int[size];
+        depths = new short[size];
+        distances = new short[size];
+        mask = size - 1;
+    }
+
+    /**
+     * Only lets the attacker give check. Most composed mates and many
+     * puzzles are found far faster, but a mate needing a quiet move is missed.
+     */
+    public void setChecksOnly(boolean checksOnly) {
+        this.checksOnly = checksOnly;
+    }
+
+    /**
+     * Ends a running {@link #solve} from another thread; it returns UNKNOWN.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public long getTableBytes() {
+        return (long) keys.length * ENTRY_BYTES;
+    }
+
+    /**
+     * Looks for a mate by the side to move in at most {@code moves} of its moves.
+     *
+     * @param nodeLimit positions to expand before giving up, 0 for no limit
+     */
+    public MateResult solve(ChessMatch match, int moves, long nodeLimit) {
+        if(moves < 1 || 2 * moves - 1 > MAX_PLIES)
+            throw new IllegalArgumentException("Mate length must be between 1 and " + (MAX_PLIES + 1) / 2 + " moves.");
+        stopped = false;
+        running = true;
+        try {
+            return run(match, moves, nodeLimit);
+        } finally {
+            running = false;
+        }
+    }
+
+    private MateResult run(ChessMatch match, int moves, long nodeLimit) {
+        this.match = match;
+        this.nodeLimit = nodeLimit;
+        nodes = 0;
+        aborted = false;
+        Arrays.fill(keys, 0L);
+        Arrays.fill(work, 0);
+        long start = System.nanoTime();
+
+        int plies = 2 * moves - 1;
+        mid(0, plies, INFINITE, INFINITE);
+        int entry = probe(match.getHash(), plies);
+        MateResult.Status status = MateResult.Status.UNKNOWN;
+        int[] line = new int[0];
+        if(!aborted && entry >= 0 && proofs[entry] == 0) {
+            status = MateResult.Status.PROVEN;
+            line = line(plies);
+        } else if(!aborted && entry >= 0 && disproofs[entry] == 0) status = MateResult.Status.DISPROVEN;
+
+        int used = 0;
+        for(int i = 0; i < work.length; i++) {
+            if(work[i] > 0) used++;
+        }
+        return new MateResult(status, line, nodes, (System.nanoTime() - start) / 1000000, getTableBytes(), keys.length, used);
+    }
+
+    /**
+     * Searches the position until its own number passes {@code thPhi} or
+     * the sum of its children passes {@code thDelta}. For the attacker phi
+     * is the proof number and delta the disproof number, for the defender
+     * the other way around, so both sides minimize phi.
+     */
+    private void mid(int ply, int remaining, int thPhi, int thDelta) {
+        long key = match.getHash();
+        long before = nodes++;
+        if(stopped || (nodeLimit > 0 && nodes > nodeLimit)) {
+            aborted = true;
+            return;
+        }
+        boolean attacker = (ply & 1) == 0;
+        int count = expand(ply, remaining, attacker);
+        if(count < 0) {
+            if(count == DEFENDER_MATED) store(key, remaining, 0, INFINITE, 0, 1);
+            else store(key, remaining, INFINITE, 0, 0, 1);
+            return;
+        }
+
+        int[] plyMoves = moves[ply];
+        long[] keysOfChildren = childKeys[ply];
+        while(true) {
+            int phi = INFINITE;
+            int delta = 0;
+            int best = 0;
+            int bestPhi = 0;
+            int secondDelta = INFINITE;
+            for(int i = 0; i < count; i++) {
+                int entry = probe(keysOfChildren[i], remaining - 1);
+                int proof = entry < 0 ? 1 : proofs[entry];
+                int disproof = entry < 0 ? 1 : disproofs[entry];
+                // the child belongs to the other side, which minimizes the other number
+                int childPhi = attacker ? disproof : proof;
+                int childDelta = attacker ? proof : disproof;
+                delta = Math.min(INFINITE, delta + childPhi);
+                if(childDelta < phi) {
+                    secondDelta = phi;
+                    phi = childDelta;
+                    best = i;
+                    bestPhi = childPhi;
+                } else if(childDelta < secondDelta) secondDelta = childDelta;
+            }
+            if(phi >= thPhi || delta >= thDelta || aborted) {
+                int proof = attacker ? phi : delta;
+                int disproof = attacker ? delta : phi;
+                int distance = proof == 0 ? distance(ply, count, remaining, attacker) : 0;
+                store(key, remaining, proof, disproof, distance, nodes - before);
+                return;
+            }
+            int childThPhi = Math.min(INFINITE, thDelta - delta + bestPhi);
+            int childThDelta = Math.min(thPhi, secondDelta == INFINITE ? INFINITE : secondDelta + 1);
+            match.play(plyMoves[best]);
+            mid(ply + 1, remaining - 1, childThPhi, childThDelta);
+            match.takeBack();
+        }
+    }
+
+    /**
+     * Fills the moves of the ply and the hashes they lead to and returns
+     * how many there are, or DEFENDER_MATED or NO_MATE when the position
+     * is decided without searching further.
+     */
+    private int expand(int ply, int remaining, boolean attacker) {
+        if(remaining == 0 && (attacker || !match.isCheck())) return NO_MATE;
+        int count = match.legalMoves(moves[ply]);
+        if(count == 0) return !attacker && match.isCheck() ? DEFENDER_MATED : NO_MATE;
+        if(remaining == 0) return NO_MATE;
+
+        int kept = 0;
+        for(int i = 0; i < count; i++) {
+            int move = moves[ply][i];
+            match.play(move);
+            if(!attacker || !checksOnly || match.isCheck()) {
+                moves[ply][kept] = move;
+                childKeys[ply][kept++] = match.getHash();
+            }
+            match.takeBack();
+        }
+        return kept == 0 ? NO_MATE : kept;
+    }
+
+    /**
+     * Plies to mate of a proven position: the fastest proven child for the
+     * attacker, the slowest child for the defender. A child pushed out of
+     * the table counts as taking all the plies it had left.
+     */
+    private int distance(int ply, int count, int remaining, boolean attacker) {
+        int distance = attacker ? Integer.MAX_VALUE : 0;
+        for(int i = 0; i < count; i++) {
+            int entry = probe(childKeys[ply][i], remaining - 1);
+            boolean proven = entry >= 0 && proofs[entry] == 0;
+            if(attacker) {
+                if(proven) distance = Math.min(distance, distances[entry]);
+            } else distance = Math.max(distance, proven ? distances[entry] : remaining - 1);
+        }
+        return distance == Integer.MAX_VALUE ? remaining : distance + 1;
+    }
+
+    /**
+     * The mating line of a proven root. Children that were pushed out of
+     * the table are proven again on the way.
+     */
+    private int[] line(int plies) {
+        int[] line = new int[plies];
+        int length = 0;
+        int remaining = plies;
+        for(int ply = 0; ply < plies && !aborted; ply++) {
+            boolean attacker = (ply & 1) == 0;
+            int count = expand(ply, remaining, attacker);
+            if(count < 0) break;
+            int best = -1;
+            int bestDistance = 0;
+            for(int pass = 0; pass < 2 && best < 0; pass++) {
+                for(int i = 0; i < count; i++) {
+                    int entry = probe(childKeys[ply][i], remaining - 1);
+                    // the attacker only needs one proven child, so the second pass searches again
+                    if(entry < 0 && (pass == 1 || !attacker)) {
+                        match.play(moves[ply][i]);
+                        mid(ply + 1, remaining - 1, INFINITE, INFINITE);
+                        match.takeBack();
+                        entry = probe(childKeys[ply][i], remaining - 1);
+                    }
+                    if(entry < 0 || proofs[entry] != 0) continue;
+                    int distance = distances[entry];
+                    if(best < 0 || (attacker ? distance < bestDistance : distance > bestDistance)) {
+                        best = i;
+                        bestDistance = distance;
+                    }
+                }
+            }
+            if(best < 0) break;
+            line[length++] = moves[ply][best];
+            match.play(moves[ply][best]);
+            remaining--;
+        }
+        for(int i = 0; i < length; i++) match.takeBack();
+        return Arrays.copyOf(line, length);
+    }
+
+    /**
+     * Index of the entry for a position with {@code remaining} plies left,
+     * or -1. A proof found with fewer plies also holds with more, and a
+     * disproof found with more also holds with fewer.
+     */
+    private int probe(long key, int remaining) {
+        int bucket = (int) key & mask & ~1;
+        for(int i = bucket; i < bucket + 2; i++) {
+            if(keys[i] != key || work[i] == 0) continue;
+            int depth = depths[i];
+            if(proofs[i] == 0 ? depth <= remaining : disproofs[i] == 0 ? depth >= remaining : depth == remaining)
+                return i;
+        }
+        return -1;
+    }
+
+    private void store(long key, int remaining, int proof, int disproof, int distance, long nodes) {
+        int bucket = (int) key & mask & ~1;
+        int slot = bucket;
+        if(keys[bucket] == key && depths[bucket] == remaining) slot = bucket;
+        else if(keys[bucket + 1] == key && depths[bucket + 1] == remaining) slot = bucket + 1;
+        else if(work[bucket + 1] < work[bucket]) slot = bucket + 1;
+        keys[slot] = key;
+        proofs[slot] = proof;
+        disproofs[slot] = disproof;
+        work[slot] = (int) Math.min(Integer.MAX_VALUE, Math.max(1, nodes));
+        depths[slot] = (short) remaining;
+        distances[slot] = (short) distance;
+    }
+}
@@ -0,0 +1,113 @@
+package chess.engine;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+/**
+ * Weights of a small quantized evaluation network in the NNUE layout: 768
+ * piece-square inputs seen from each side, one shared hidden layer of
+ * {@code hidden} neurons per side, clipped to [0, QA], and a single output
+ * reading both halves, the side to move first. Hidden weights are scaled by
+ * QA and output weights by QB, so the output divided by QA * QB and
+ * multiplied by SCALE is in centipawns.
+ * <p>
+ * File layout, big-endian: magic, version, inputs and hidden size as ints,
+ * then the hidden weights input by input, the hidden biases and the output
+ * weights as shorts, and the output bias as an int.
+ *
+ * @author joana
+ */
+public class Network {
+    public static final int INPUTS = 768;
+    public static final int QA = 255;
+    public static final int QB = 64;
+    public static final int SCALE = 400;
+
+    static final int MAGIC = 0x4E4E5545;
+    static final int VERSION = 1;
+
+    final int hidden;
+    // one array of hidden weights per input, and output weights for the side to move and the other;
+    // separate arrays indexed from zero are what the JIT vectorizes
+    final short[][] featureWeights;
+    final short[] featureBiases;
+    final short[][] outputWeights;
+    final int outputBias;
+
+    Network(int hidden, short[][] featureWeights, short[] featureBiases, short[][] outputWeights, int outputBias) {
+        this.hidden = hidden;
+        this.featureWeights = featureWeights;
+        this.featureBiases = featureBiases;
+        this.outputWeights = outputWeights;
+        this.outputBias = outputBias;
+    }
+
+    public int getHidden() {
+        return hidden;
+    }
+
+    public static Network load(Path file) throws IOException {
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if(in.readInt() != MAGIC || in.readInt() != VERSION)
+                throw new IOException("Not a network file: " + file);
+            int inputs = in.readInt();
+            int hidden = in.readInt();
+            if(inputs != INPUTS || hidden < 1 || hidden > 4096)
+                throw new IOException("Unsupported network shape " + inputs + "x" + hidden + ": " + file);
+            short[][] featureWeights = new short[INPUTS][];
+            for(int i = 0; i < INPUTS; i++) featureWeights[i] = readShorts(in, hidden);
+            short[] featureBiases = readShorts(in, hidden);
+            short[][] outputWeights = {readShorts(in, hidden), readShorts(in, hidden)};
+            return new Network(hidden, featureWeights, featureBiases, outputWeights, in.readInt());
+        }
+    }
+
+    public void save(Path file) throws IOException {
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(INPUTS);
+            out.writeInt(hidden);
+            for(short[] weights : featureWeights) writeShorts(out, weights);
+            writeShorts(out, featureBiases);
+            writeShorts(out, outputWeights[0]);
+            writeShorts(out, outputWeights[1]);
+            out.writeInt(outputBias);
+        }
+    }
+
+    /**
+     * A network with small random weights, for benchmarks and as a
+     * starting point for training; it does not play well.
+     */
+    public static Network random(int hidden, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        short[][] featureWeights = new short[INPUTS][hidden];
+        for(short[] weights : featureWeights) {
+            for(int i = 0; i < hidden; i++) weights[i] = (short) random.nextInt(-32, 33);
+        }
+        short[] featureBiases = new short[hidden];
+        for(int i = 0; i < hidden; i++) featureBiases[i] = (short) random.nextInt(0, 128);
+        short[][] outputWeights = new short[2][hidden];
+        for(short[] weights : outputWeights) {
+            for(int i = 0; i < hidden; i++) weights[i] = (short) random.nextInt(-64, 65);
+        }
+        return new Network(hidden, featureWeights, featureBiases, outputWeights, 0);
+    }
+
+    private static short[] readShorts(DataInputStream in, int count) throws IOException {
+        short[] values = new short[count];
+        for(int i = 0; i < count; i++) values[i] = in.readShort();
+        return values;
+    }
+
+    private static void writeShorts(DataOutputStream out, short[] values) throws IOException {
+        for(short value : values) out.writeShort(value);
+    }
+}
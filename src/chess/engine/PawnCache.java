@@ -0,0 +1,97 @@
+package chess.engine;
+
+import java.util.Arrays;
+
+/**
+ * Small direct-mapped table of pawn structure evaluations keyed by
+ * {@link chess.ChessMatch#getPawnHash()}. Sibling nodes of a search mostly
+ * share their pawns, so most evaluations find their entry here. Each entry
+ * also keeps the pawns of both colors, which the king safety terms read
+ * without going back to the pieces.
+ * <p>
+ * Not thread safe: every search thread has its own cache.
+ *
+ * @author joana
+ */
+public class PawnCache {
+    private final int mask;
+    private final long[] keys;
+    private final int[] scores;
+    private final long[] whitePawns;
+    private final long[] blackPawns;
+
+    private long probes;
+    private long hits;
+
+    /**
+     * @param entries number of entries, rounded down to a power of two
+     */
+    public PawnCache(int entries) {
+        int size = Integer.highestOneBit(Math.max(entries, 1));
+        mask = size - 1;
+        // an empty entry has key 0, the key of a position without pawns, and
+        // holds the right answer for it: no pawns and a score of 0
+        keys = new long[size];
+        scores = new int[size];
+        whitePawns = new long[size];
+        blackPawns = new long[size];
+    }
+
+    int slot(long key) {
+        return (int) key & mask;
+    }
+
+    boolean probe(int slot, long key) {
+        probes++;
+        if(keys[slot] != key) return false;
+        hits++;
+        return true;
+    }
+
+    void store(int slot, long key, int score, long white, long black) {
+        keys[slot] = key;
+        scores[slot] = score;
+        whitePawns[slot] = white;
+        blackPawns[slot] = black;
+    }
+
+    int score(int slot) {
+        return scores[slot];
+    }
+
+    long whitePawns(int slot) {
+        return whitePawns[slot];
+    }
+
+    long blackPawns(int slot) {
+        return blackPawns[slot];
+    }
+
+    public long getProbes() {
+        return probes;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public double getHitRate() {
+        return probes == 0 ? 0 : (double) hits / probes;
+    }
+
+    /**
+     * Empties every entry and resets the statistics.
+     */
+    public void clear() {
+        Arrays.fill(keys, 0L);
+        Arrays.fill(scores, 0);
+        Arrays.fill(whitePawns, 0L);
+        Arrays.fill(blackPawns, 0L);
+        resetStatistics();
+    }
+
+    public void resetStatistics() {
+        probes = 0;
+        hits = 0;
+    }
+}
@@ -0,0 +1,569 @@
+package chess.engine;
+
+import chess.ChessMatch;
+import chess.ChessPiece;
+import chess.Color;
+import chess.Move;
+import chess.PieceType;
+import java.util.Arrays;
+import monitoring.SearchIterationEvent;
+
+/**
+ * Iterative deepening alpha-beta search over a {@link ChessMatch}. The match
+ * is walked with {@link ChessMatch#play(int)} and {@link ChessMatch#takeBack()}
+ * and is back in its original position when {@link #search} returns.
+ * One instance searches one position at a time; {@link #stop()} may be
+ * called from any thread.
+ * <p>
+ * On top of plain alpha-beta the search uses principal variation search,
+ * aspiration windows at the root, null move pruning, late move reductions
+ * and check extensions, each of which can be switched off to measure it.
+ * Moves are ordered by the move of the {@link TranspositionTable}, the
+ * previous principal variation, captures, killer moves and a history of
+ * quiet moves that caused cutoffs. The table, the history and the pawn
+ * cache are kept from one search to the next until {@link #clear()}, so
+ * the result of a search depends on the searches made before it; callers
+ * that need repeatable results clear it before each one.
+ *
+ * @author joana
+ */
+public class Search {
+    public static final int MATE = 100000;
+    public static final int INFINITE = 1000000;
+    public static final int MAX_PLY = 64;
+
+    private static final int MAX_MOVES = 256;
+    // a node takes tens of microseconds, so the clock is read well within a millisecond
+    private static final int DEFAULT_CLOCK_CHECK_INTERVAL = 16;
+
+    private static final int ASPIRATION_WINDOW = 30;
+    private static final int ASPIRATION_MIN_DEPTH = 4;
+    private static final int NULL_MOVE_MIN_DEPTH = 3;
+    private static final int REDUCTION_MIN_DEPTH = 3;
+    // moves searched to full depth at every node before later quiet moves are reduced
+    private static final int REDUCTION_FIRST_MOVE = 3;
+    private static final int[][] REDUCTIONS = new int[MAX_PLY + 1][MAX_MOVES];
+
+    // move ordering scores; history scores stay below the killers
+    private static final int HASH_MOVE_SCORE = 2000000;
+    private static final int PV_SCORE = 1000000;
+    private static final int CAPTURE_SCORE = 10000;
+    private static final int KILLER_SCORE = 8000;
+    private static final int HISTORY_MAX = 7000;
+
+    static {
+        for(int depth = 1; depth <= MAX_PLY; depth++) {
+            for(int index = 1; index < MAX_MOVES; index++) {
+                REDUCTIONS[depth][index] = (int) (0.75 + Math.log(depth) * Math.log(index) / 2.25);
+            }
+        }
+    }
+
+    private final int[][] moves = new int[MAX_PLY + 1][MAX_MOVES];
+    private final int[][] orderScores = new int[MAX_PLY + 1][MAX_MOVES];
+    private final int[][] pv = new int[MAX_PLY + 1][MAX_PLY + 1];
+    private final int[] pvLength = new int[MAX_PLY + 1];
+    // principal variation of the last iteration and whether each ply is still on it
+    private final int[] lastPv = new int[MAX_PLY + 1];
+    private int lastPvLength;
+    private final boolean[] onPv = new boolean[MAX_PLY + 2];
+    private final int[][] killers = new int[MAX_PLY + 1][2];
+    // by color, source and target square
+    private final int[] history = new int[2 * 64 * 64];
+    private final PawnCache pawnCache = new PawnCache(1 << 14);
+    private final TranspositionTable table = new TranspositionTable(TranspositionTable.DEFAULT_ENTRIES);
+
+    private volatile boolean stopped;
+    private volatile boolean running;
+    private SearchListener listener;
+
+    private ChessMatch match;
+    private long nodes;
+    private long nodeLimit;
+    private long startTime;
+    private long deadline;
+    private final TimeManager timeManager = new TimeManager();
+    private int clockCheckInterval = DEFAULT_CLOCK_CHECK_INTERVAL;
+    private int clockCheckCountdown;
+    private NnueEvaluator nnue;
+
+    private boolean principalVariationSearch = true;
+    private boolean aspirationWindows = true;
+    private boolean nullMovePruning = true;
+    private boolean lateMoveReductions = true;
+    private boolean checkExtensions = true;
+
+    public void setListener(SearchListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Ends the current search, which then returns its best move so far. Has
+     * no effect on searches started afterwards.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Forgets everything learned by previous searches: the history, the
+     * transposition table and the pawn cache. Not to be called while a
+     * search is running.
+     */
+    public void clear() {
+        Arrays.fill(history, 0);
+        table.clear();
+        pawnCache.clear();
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Pawn structure cache of this search. It stays filled between searches;
+     * its statistics are reset when a search starts.
+     */
+    public PawnCache getPawnCache() {
+        return pawnCache;
+    }
+
+    /**
+     * Transposition table of this search. It stays filled between searches;
+     * its statistics are reset when a search starts.
+     */
+    public TranspositionTable getTranspositionTable() {
+        return table;
+    }
+
+    public TimeManager getTimeManager() {
+        return timeManager;
+    }
+
+    /**
+     * How many nodes are searched between two readings of the clock. The
+     * stop flag itself is read at every node.
+     */
+    public void setClockCheckInterval(int nodes) {
+        clockCheckInterval = Math.max(1, nodes);
+    }
+
+    /**
+     * Evaluates with {@code network} instead of {@link Evaluation}; null
+     * switches back.
+     */
+    public void setNetwork(Network network) {
+        nnue = network == null ? null : new NnueEvaluator(network, MAX_PLY + 1);
+    }
+
+    /**
+     * Searches moves after the first with a null window around alpha and
+     * only searches them again with the full window when they beat it.
+     */
+    public void setPrincipalVariationSearch(boolean enabled) {
+        principalVariationSearch = enabled;
+    }
+
+    /**
+     * Searches the root with a narrow window around the score of the
+     * previous iteration, widened when the score falls outside it.
+     */
+    public void setAspirationWindows(boolean enabled) {
+        aspirationWindows = enabled;
+    }
+
+    /**
+     * Lets the player to move pass and prunes the node when a shallower
+     * search still fails high. Never used in check or when the player has
+     * only king and pawns, where passing would often be the best move.
+     */
+    public void setNullMovePruning(boolean enabled) {
+        nullMovePruning = enabled;
+    }
+
+    /**
+     * Searches late quiet moves to a smaller depth, the more so the later
+     * they come and the less often they caused cutoffs before, and again to
+     * full depth if they beat alpha.
+     */
+    public void setLateMoveReductions(boolean enabled) {
+        lateMoveReductions = enabled;
+    }
+
+    /**
+     * Searches moves that give check one ply deeper.
+     */
+    public void setCheckExtensions(boolean enabled) {
+        checkExtensions = enabled;
+    }
+
+    public SearchInfo search(ChessMatch match, SearchLimits limits) {
+        stopped = false;
+        running = true;
+        try {
+            return iterate(match, limits);
+        } finally {
+            running = false;
+        }
+    }
+
+    private SearchInfo iterate(ChessMatch match, SearchLimits limits) {
+        this.match = match;
+        nodes = 0;
+        pawnCache.resetStatistics();
+        table.resetStatistics();
+        // the principal variation of a previous search must not order this one
+        pvLength[0] = 0;
+        lastPvLength = 0;
+        for(int[] moves : killers) Arrays.fill(moves, Move.NONE);
+        for(int i = 0; i < history.length; i++) history[i] >>= 2;
+        nodeLimit = limits.getNodes();
+        startTime = System.nanoTime();
+        timeManager.start(limits, match.getCurrentPlayer(), startTime);
+        if(nnue != null) nnue.refresh(match);
+        deadline = timeManager.getHardDeadline();
+        clockCheckCountdown = clockCheckInterval;
+        int maxDepth = limits.getDepth() > 0 ? Math.min(limits.getDepth(), MAX_PLY) : MAX_PLY;
+
+        SearchInfo result = new SearchInfo(0, 0, 0, 0, new int[0]);
+        int rootCount = match.legalMoves(moves[0]);
+        if(rootCount == 0) return result;
+        int lines = Math.min(Math.max(limits.getMultiPv(), 1), rootCount);
+
+        for(int depth = 1; depth <= maxDepth && !stopped; depth++) {
+            SearchIterationEvent event = new SearchIterationEvent();
+            event.begin();
+            // line k searches the root moves not chosen by lines 0 to k - 1 of this depth
+            int line = 0;
+            for(; line < lines; line++) {
+                int score = line == 0 ? aspirate(depth, rootCount, result.getScore()) : searchRoot(depth, line, rootCount, -INFINITE, INFINITE);
+                // stopped before a single move was searched: keep the line of the previous depth
+                if(pvLength[0] == 0) break;
+                SearchInfo info = new SearchInfo(depth, score, nodes, elapsedMillis(), Arrays.copyOf(pv[0], pvLength[0]), line + 1);
+                if(line == 0) {
+                    result = info;
+                    lastPvLength = pvLength[0];
+                    System.arraycopy(pv[0], 0, lastPv, 0, lastPvLength);
+                }
+                if(stopped) break;
+                if(listener != null) listener.iterationCompleted(info);
+            }
+            if(line < lines) break;
+            if(event.shouldCommit()) {
+                event.depth = depth;
+                event.score = result.getScore();
+                event.nodes = nodes;
+                event.nodesPerSecond = result.getNodesPerSecond();
+                event.pawnCacheHitRate = pawnCache.getHitRate();
+                event.hashHits = table.getHits();
+                event.bestMove = Move.toUci(result.getBestMove());
+                event.position = match.toFen();
+                event.commit();
+            }
+            if(Math.abs(result.getScore()) >= MATE - depth) break;
+            if(timeManager.iterationCompleted(result.getBestMove(), result.getScore(), System.nanoTime())) break;
+        }
+        // stopped before the first iteration finished: any legal move beats none
+        if(result.getBestMove() == Move.NONE)
+            result = new SearchInfo(0, 0, nodes, elapsedMillis(), new int[] {moves[0][0]});
+        return result;
+    }
+
+    /**
+     * Searches the best line of the root, within a window around the score
+     * of the previous iteration if that is enabled, widening it on the side
+     * the score fell out until it lands inside.
+     */
+    private int aspirate(int depth, int count, int previous) {
+        if(!aspirationWindows || depth < ASPIRATION_MIN_DEPTH || Math.abs(previous) >= MATE - MAX_PLY)
+            return searchRoot(depth, 0, count, -INFINITE, INFINITE);
+        int window = ASPIRATION_WINDOW;
+        int alpha = previous - window;
+        int beta = previous + window;
+        while(true) {
+            int score = searchRoot(depth, 0, count, alpha, beta);
+            if(stopped || (score > alpha && score < beta)) return score;
+            window *= 2;
+            if(score <= alpha) alpha = Math.max(-INFINITE, score - window);
+            else beta = Math.min(INFINITE, score + window);
+        }
+    }
+
+    /**
+     * Searches the root moves from index {@code first} on and swaps the best
+     * one to {@code first}, where the next iteration will search it first
+     * so that a stopped iteration still has a result.
+     */
+    private int searchRoot(int depth, int first, int count, int alpha, int beta) {
+        int[] list = moves[0];
+        int best = first;
+        pvLength[0] = 0;
+        for(int i = first; i < count; i++) {
+            makeMove(list[i]);
+            nodes++;
+            onPv[1] = lastPvLength > 0 && list[i] == lastPv[0];
+            int newDepth = checkExtensions && match.isCheck() ? depth : depth - 1;
+            int score;
+            if(i == first || !principalVariationSearch) score = -alphaBeta(newDepth, -beta, -alpha, 1, true);
+            else {
+                score = -alphaBeta(newDepth, -alpha - 1, -alpha, 1, true);
+                if(score > alpha && score < beta && !stopped) score = -alphaBeta(newDepth, -beta, -alpha, 1, true);
+            }
+            undoMove();
+            if(stopped) break;
+            if(score > alpha) {
+                alpha = score;
+                best = i;
+                updatePv(0, list[i]);
+                if(score >= beta) break;
+            }
+        }
+        int move = list[best];
+        list[best] = list[first];
+        list[first] = move;
+        return alpha;
+    }
+
+    private int alphaBeta(int depth, int alpha, int beta, int ply, boolean nullAllowed) {
+        pvLength[ply] = 0;
+        if(depth <= 0 || ply >= MAX_PLY) return quiescence(alpha, beta, ply);
+        if(shouldStop()) return 0;
+        if(match.getHalfMoveClock() >= 100) return 0;
+
+        boolean pvNode = beta - alpha > 1;
+        long key = match.getHash();
+        int slot = table.probe(key);
+        int hashMove = Move.NONE;
+        if(slot >= 0) {
+            hashMove = table.move(slot);
+            if(!pvNode && table.depth(slot) >= depth) {
+                int score = fromTable(table.score(slot), ply);
+                int bound = table.bound(slot);
+                if(bound == TranspositionTable.EXACT) return Math.max(alpha, Math.min(beta, score));
+                if(bound == TranspositionTable.LOWER && score >= beta) return beta;
+                if(bound == TranspositionTable.UPPER && score <= alpha) return alpha;
+            }
+        }
+
+        boolean inCheck = match.isCheck();
+        if(nullMovePruning && nullAllowed && !pvNode && !inCheck && depth >= NULL_MOVE_MIN_DEPTH
+                && hasPieces(match.getCurrentPlayer()) && staticEvaluation() >= beta) {
+            int reduction = depth >= 7 ? 3 : 2;
+            match.playNullMove();
+            nodes++;
+            onPv[ply + 1] = false;
+            int score = -alphaBeta(depth - 1 - reduction, -beta, -beta + 1, ply + 1, false);
+            match.takeBack();
+            if(stopped) return 0;
+            if(score >= beta) return beta;
+        }
+
+        int count = match.legalMoves(moves[ply]);
+        if(count == 0) return inCheck ? -MATE + ply : 0;
+        orderMoves(ply, count, hashMove);
+
+        int[] list = moves[ply];
+        int side = match.getCurrentPlayer().ordinal() << 12;
+        int bestMove = Move.NONE;
+        for(int i = 0; i < count; i++) {
+            pickMove(ply, i, count);
+            int move = list[i];
+            boolean quiet = !match.isCapture(move) && Move.promotion(move) == Move.PROMOTION_NONE;
+            makeMove(move);
+            nodes++;
+            onPv[ply + 1] = onPv[ply] && ply < lastPvLength && move == lastPv[ply];
+            boolean givesCheck = match.isCheck();
+            int newDepth = checkExtensions && givesCheck ? depth : depth - 1;
+
+            int reduction = 0;
+            if(lateMoveReductions && quiet && i >= REDUCTION_FIRST_MOVE && depth >= REDUCTION_MIN_DEPTH
+                    && !inCheck && !givesCheck && !isKiller(ply, move)) {
+                reduction = REDUCTIONS[depth][i];
+                if(pvNode) reduction--;
+                if(history[side | (move & 0xFFF)] > HISTORY_MAX / 2) reduction--;
+                reduction = Math.max(0, Math.min(reduction, newDepth - 1));
+            }
+            // a reduced null window search, then a full depth one, then the full window
+            int score = 0;
+            boolean full = true;
+            if(reduction > 0) {
+                score = -alphaBeta(newDepth - reduction, -alpha - 1, -alpha, ply + 1, true);
+                full = score > alpha;
+            }
+            if(full && i > 0 && principalVariationSearch && !stopped) {
+                score = -alphaBeta(newDepth, -alpha - 1, -alpha, ply + 1, true);
+                full = score > alpha && score < beta;
+            }
+            if(full && !stopped) score = -alphaBeta(newDepth, -beta, -alpha, ply + 1, true);
+            undoMove();
+            if(stopped) return 0;
+            if(score >= beta) {
+                if(quiet) storeCutoff(ply, side, move, depth);
+                table.store(key, depth, toTable(beta, ply), TranspositionTable.LOWER, move);
+                return beta;
+            }
+            if(score > alpha) {
+                alpha = score;
+                bestMove = move;
+                updatePv(ply, move);
+            }
+        }
+        table.store(key, depth, toTable(alpha, ply), bestMove != Move.NONE ? TranspositionTable.EXACT : TranspositionTable.UPPER,
+                bestMove != Move.NONE ? bestMove : hashMove);
+        return alpha;
+    }
+
+    /**
+     * Mate scores count plies from the root; the table keeps them counted
+     * from the position, which may be reached at another ply.
+     */
+    private static int toTable(int score, int ply) {
+        if(score >= MATE - MAX_PLY) return score + ply;
+        if(score <= -MATE + MAX_PLY) return score - ply;
+        return score;
+    }
+
+    private static int fromTable(int score, int ply) {
+        if(score >= MATE - MAX_PLY) return score - ply;
+        if(score <= -MATE + MAX_PLY) return score + ply;
+        return score;
+    }
+
+    /**
+     * Whether the player has a piece other than king and pawns, without
+     * which passing is too often the best move for null move pruning to hold.
+     */
+    private boolean hasPieces(Color color) {
+        return match.getPieceCount(color, PieceType.QUEEN) > 0 || match.getPieceCount(color, PieceType.ROOK) > 0
+                || match.getPieceCount(color, PieceType.BISHOP) > 0 || match.getPieceCount(color, PieceType.KNIGHT) > 0;
+    }
+
+    private int staticEvaluation() {
+        return nnue != null ? nnue.evaluate(match.getCurrentPlayer()) : Evaluation.evaluate(match, pawnCache);
+    }
+
+    private boolean isKiller(int ply, int move) {
+        return move == killers[ply][0] || move == killers[ply][1];
+    }
+
+    private void storeCutoff(int ply, int side, int move, int depth) {
+        if(move != killers[ply][0]) {
+            killers[ply][1] = killers[ply][0];
+            killers[ply][0] = move;
+        }
+        int index = side | (move & 0xFFF);
+        history[index] += depth * depth;
+        if(history[index] >= HISTORY_MAX) {
+            for(int i = 0; i < history.length; i++) history[i] >>= 1;
+        }
+    }
+
+    private int quiescence(int alpha, int beta, int ply) {
+        pvLength[ply] = 0;
+        if(shouldStop()) return 0;
+
+        int count = match.legalMoves(moves[ply]);
+        if(count == 0) return match.isCheck() ? -MATE + ply : 0;
+
+        int[] list = moves[ply];
+        int captures = count;
+        // in check every evasion is searched, otherwise only captures and queen promotions
+        if(!match.isCheck() || ply >= MAX_PLY) {
+            int standPat = staticEvaluation();
+            if(standPat >= beta || ply >= MAX_PLY) return standPat;
+            if(standPat > alpha) alpha = standPat;
+
+            captures = 0;
+            for(int i = 0; i < count; i++) {
+                if(match.isCapture(list[i]) || Move.promotion(list[i]) == Move.PROMOTION_QUEEN) list[captures++] = list[i];
+            }
+        }
+        orderMoves(ply, captures, Move.NONE);
+        onPv[ply + 1] = false;
+        for(int i = 0; i < captures; i++) {
+            pickMove(ply, i, captures);
+            makeMove(list[i]);
+            nodes++;
+            int score = -quiescence(-beta, -alpha, ply + 1);
+            undoMove();
+            if(stopped) return 0;
+            if(score >= beta) return beta;
+            if(score > alpha) {
+                alpha = score;
+                updatePv(ply, list[i]);
+            }
+        }
+        return alpha;
+    }
+
+    private void makeMove(int move) {
+        if(nnue != null) nnue.push(match, move);
+        match.play(move);
+    }
+
+    private void undoMove() {
+        match.takeBack();
+        if(nnue != null) nnue.pop();
+    }
+
+    private boolean shouldStop() {
+        if(stopped) return true;
+        if(nodeLimit > 0 && nodes >= nodeLimit) stopped = true;
+        else if(deadline > 0 && --clockCheckCountdown <= 0) {
+            clockCheckCountdown = clockCheckInterval;
+            if(System.nanoTime() >= deadline) stopped = true;
+        }
+        return stopped;
+    }
+
+    private void orderMoves(int ply, int count, int hashMove) {
+        int[] list = moves[ply];
+        int[] scores = orderScores[ply];
+        int pvMove = onPv[ply] && ply < lastPvLength ? lastPv[ply] : Move.NONE;
+        int side = match.getCurrentPlayer().ordinal() << 12;
+        for(int i = 0; i < count; i++) {
+            int move = list[i];
+            int score;
+            ChessPiece victim = match.pieceAt(Move.target(move));
+            if(move == hashMove) score = HASH_MOVE_SCORE;
+            else if(move == pvMove) score = PV_SCORE;
+            else if(victim != null) {
+                ChessPiece attacker = match.pieceAt(Move.source(move));
+                score = 10 * Evaluation.VALUES[Evaluation.typeOf(victim)] - Evaluation.VALUES[Evaluation.typeOf(attacker)] + CAPTURE_SCORE;
+            } else if(match.isCapture(move)) score = CAPTURE_SCORE + 900;
+            else if(Move.promotion(move) != Move.PROMOTION_NONE) score = 0;
+            else if(move == killers[ply][0]) score = KILLER_SCORE;
+            else if(move == killers[ply][1]) score = KILLER_SCORE - 100;
+            else score = history[side | (move & 0xFFF)];
+            if(Move.promotion(move) == Move.PROMOTION_QUEEN) score += 9000;
+            scores[i] = score;
+        }
+    }
+
+    private void pickMove(int ply, int index, int count) {
+        int[] list = moves[ply];
+        int[] scores = orderScores[ply];
+        int best = index;
+        for(int i = index + 1; i < count; i++) {
+            if(scores[i] > scores[best]) best = i;
+        }
+        if(best != index) {
+            int move = list[index];
+            list[index] = list[best];
+            list[best] = move;
+            int score = scores[index];
+            scores[index] = scores[best];
+            scores[best] = score;
+        }
+    }
+
+    private void updatePv(int ply, int move) {
+        pv[ply][0] = move;
+        System.arraycopy(pv[ply + 1], 0, pv[ply], 1, pvLength[ply + 1]);
+        pvLength[ply] = pvLength[ply + 1] + 1;
+    }
+
+    private long elapsedMillis() {
+        return (System.nanoTime() - startTime) / 1000000;
+    }
+}
@@ -0,0 +1,88 @@
+package chess.engine;
+
+import chess.Move;
+
+/**
+ * Outcome of one completed iteration of the search, for one of its lines
+ * when more than one is searched.
+ *
+ * @author joana
+ */
+public class SearchInfo {
+    private final int depth;
+    private final int score;
+    private final long nodes;
+    private final long timeMillis;
+    private final int[] principalVariation;
+    private final int multiPv;
+
+    public SearchInfo(int depth, int score, long nodes, long timeMillis, int[] principalVariation) {
+        this(depth, score, nodes, timeMillis, principalVariation, 1);
+    }
+
+    public SearchInfo(int depth, int score, long nodes, long timeMillis, int[] principalVariation, int multiPv) {
+        this.depth = depth;
+        this.score = score;
+        this.nodes = nodes;
+        this.timeMillis = timeMillis;
+        this.principalVariation = principalVariation;
+        this.multiPv = multiPv;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+
+    public long getNodesPerSecond() {
+        return timeMillis == 0 ? nodes * 1000 : nodes * 1000 / timeMillis;
+    }
+
+    /**
+     * Rank of this line when several are searched, 1 for the best.
+     */
+    public int getMultiPv() {
+        return multiPv;
+    }
+
+    public int[] getPrincipalVariation() {
+        return principalVariation.clone();
+    }
+
+    public int getBestMove() {
+        return principalVariation.length == 0 ? Move.NONE : principalVariation[0];
+    }
+
+    public boolean isMateScore() {
+        return Math.abs(score) >= Search.MATE - Search.MAX_PLY;
+    }
+
+    /**
+     * Moves until mate, negative when the player to move is getting mated.
+     */
+    public int getMateIn() {
+        int plies = Search.MATE - Math.abs(score);
+        return score > 0 ? (plies + 1) / 2 : -(plies + 1) / 2;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for(int move : principalVariation) {
+            if(sb.length() > 0) sb.append(' ');
+            sb.append(Move.toUci(move));
+        }
+        return "depth " + depth + " score " + score + " nodes " + nodes + " pv " + sb;
+    }
+}
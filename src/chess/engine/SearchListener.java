@@ -0,0 +1,13 @@
+package chess.engine;
+
+/**
+ * Receives progress from a running {@link Search}, on the search thread.
+ *
+ * @author joana
+ */
+public interface SearchListener {
+    /**
+     * Called for every line of a completed iteration, best line first.
+     */
+    void iterationCompleted(SearchInfo info);
+}
@@ -0,0 +1,115 @@
+package chess.engine;
+
+import chess.Color;
+
+/**
+ * Decides how long a search may run. From the clock it derives a soft limit,
+ * the time a move should normally take, and a hard limit the search must
+ * never pass. After every iteration the soft limit is scaled: it shrinks
+ * while the best move stays the same and grows when the score drops, so
+ * time goes to the moves that need it. A fixed move time sets both limits.
+ *
+ * @author joana
+ */
+public class TimeManager {
+    public static final int DEFAULT_MOVE_OVERHEAD = 10;
+
+    // moves assumed to be left when the clock does not say
+    private static final int MOVES_TO_GO = 30;
+    private static final int SCORE_DROP = 30;
+    private static final int STABLE_ITERATIONS = 3;
+
+    private long moveOverhead = DEFAULT_MOVE_OVERHEAD;
+
+    private long startTime;
+    private long softLimit;
+    private long hardLimit;
+    private boolean fixed;
+    private int previousBestMove;
+    private int previousScore;
+    private int stableIterations;
+    private int completedIterations;
+
+    public long getMoveOverhead() {
+        return moveOverhead;
+    }
+
+    /**
+     * Milliseconds kept aside for each move for communication with the GUI
+     * and process scheduling.
+     */
+    public void setMoveOverhead(long moveOverhead) {
+        this.moveOverhead = Math.max(0, moveOverhead);
+    }
+
+    /**
+     * Sets the limits of a search that starts at {@code startTime}, a
+     * {@link System#nanoTime()} value.
+     */
+    public void start(SearchLimits limits, Color toMove, long startTime) {
+        this.startTime = startTime;
+        softLimit = 0;
+        hardLimit = 0;
+        fixed = false;
+        stableIterations = 0;
+        completedIterations = 0;
+        if(limits.isInfinite()) return;
+
+        if(limits.getMoveTime() > 0) {
+            fixed = true;
+            softLimit = hardLimit = Math.max(1, limits.getMoveTime() - moveOverhead) * 1000000;
+            return;
+        }
+        boolean white = toMove == Color.WHITE;
+        long time = white ? limits.getWhiteTime() : limits.getBlackTime();
+        long increment = white ? limits.getWhiteIncrement() : limits.getBlackIncrement();
+        if(time <= 0) return;
+
+        long available = Math.max(1, time - moveOverhead);
+        int movesToGo = limits.getMovesToGo() > 0 ? limits.getMovesToGo() : MOVES_TO_GO;
+        long soft = Math.min(available / movesToGo + increment * 3 / 4, available * 3 / 5);
+        long hard = Math.min(soft * 4, available * 4 / 5);
+        softLimit = Math.max(1, soft) * 1000000;
+        hardLimit = Math.max(1, hard) * 1000000;
+    }
+
+    /**
+     * {@link System#nanoTime()} value at which the search must stop, or 0
+     * when there is no time limit.
+     */
+    public long getHardDeadline() {
+        return hardLimit == 0 ? 0 : startTime + hardLimit;
+    }
+
+    public long getSoftLimitMillis() {
+        return softLimit / 1000000;
+    }
+
+    public long getHardLimitMillis() {
+        return hardLimit / 1000000;
+    }
+
+    /**
+     * Called after each completed iteration with its best move and score.
+     * Returns true when another iteration should not be started.
+     */
+    public boolean iterationCompleted(int bestMove, int score, long now) {
+        if(softLimit == 0) return false;
+        long elapsed = now - startTime;
+        if(fixed) return elapsed >= hardLimit;
+
+        double scale = 1;
+        if(completedIterations > 0) {
+            stableIterations = bestMove == previousBestMove ? stableIterations + 1 : 0;
+            if(stableIterations >= STABLE_ITERATIONS) scale *= 0.5;
+            if(score < previousScore - SCORE_DROP) scale *= 2;
+        }
+        previousBestMove = bestMove;
+        previousScore = score;
+        completedIterations++;
+
+        long optimum = Math.min((long) (softLimit * scale), hardLimit);
+        // the next iteration takes longer than all before it, so do not start one past half the optimum
+        return elapsed >= optimum / 2;
+    }
+}
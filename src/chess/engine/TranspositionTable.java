@@ -0,0 +1,114 @@
+package chess.engine;
+
+import java.util.Arrays;
+
+/**
+ * Direct-mapped table of search results keyed by
+ * {@link chess.ChessMatch#getHash()}: the depth searched, the score, whether
+ * it is exact or a bound, and the best move found. It stays filled between
+ * searches, so a search of a position reached from the previous one, or of
+ * the same position again, starts with what was already learned, until
+ * {@link #clear()} or {@link Search#clear()}. A new entry always replaces
+ * the old one in its slot.
+ * <p>
+ * Not thread safe: every search thread has its own table.
+ *
+ * @author joana
+ */
+public class TranspositionTable {
+    public static final int DEFAULT_ENTRIES = 1 << 18;
+
+    static final int EXACT = 0;
+    static final int LOWER = 1;
+    static final int UPPER = 2;
+
+    private final int mask;
+    private final long[] keys;
+    // score in the high half, then bound, depth and move
+    private final long[] data;
+
+    private long probes;
+    private long hits;
+
+    /**
+     * @param entries number of entries, rounded down to a power of two
+     */
+    public TranspositionTable(int entries) {
+        int size = Integer.highestOneBit(Math.max(entries, 1));
+        mask = size - 1;
+        keys = new long[size];
+        data = new long[size];
+    }
+
+    /**
+     * Empties every entry and resets the statistics.
+     */
+    public void clear() {
+        Arrays.fill(keys, 0L);
+        Arrays.fill(data, 0L);
+        resetStatistics();
+    }
+
+    public int getEntries() {
+        return keys.length;
+    }
+
+    /**
+     * Slot of the entry for {@code key}, or -1 if there is none.
+     */
+    int probe(long key) {
+        probes++;
+        int slot = (int) key & mask;
+        // an empty slot has data 0, which no stored entry has since the depth is at least 1
+        if(keys[slot] != key || data[slot] == 0) return -1;
+        hits++;
+        return slot;
+    }
+
+    void store(long key, int depth, int score, int bound, int move) {
+        int slot = (int) key & mask;
+        keys[slot] = key;
+        data[slot] = (long) score << 32 | bound << 24 | Math.min(depth, 255) << 16 | (move & 0xFFFF);
+    }
+
+    int score(int slot) {
+        return (int) (data[slot] >> 32);
+    }
+
+    int bound(int slot) {
+        return (int) (data[slot] >>> 24) & 0xFF;
+    }
+
+    int depth(int slot) {
+        return (int) (data[slot] >>> 16) & 0xFF;
+    }
+
+    int move(int slot) {
+        return (int) data[slot] & 0xFFFF;
+    }
+
+    public long getProbes() {
+        return probes;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public void resetStatistics() {
+        probes = 0;
+        hits = 0;
+    }
+
+    /**
+     * Used entries per thousand, sampled over the first thousand slots.
+     */
+    public int getUsedPermille() {
+        int sample = Math.min(1000, data.length);
+        int used = 0;
+        for(int i = 0; i < sample; i++) {
+            if(data[i] != 0) used++;
+        }
+        return used * 1000 / sample;
+    }
+}
@@ -0,0 +1,451 @@
+package chess.explorer;
+
+import chess.ChessMatch;
+import exceptions.ChessException;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Builds the index read by {@link OpeningExplorer}. Games are replayed
+ * through a {@link ChessMatch} in batches on a {@link ForkJoinPool}; every
+ * worker thread counts into its own table of primitive arrays. When a table
+ * holds {@code runPositions} positions it is written, sorted by hash, to a
+ * run file in the temporary directory and emptied, so the heap holds at
+ * most that many positions per worker however many games are read. The
+ * runs are merged on disk when the index is written.
+ * <p>
+ * Counts are ints, so no position may be reached by more than 2^31 - 1
+ * games, and an index holds at most 2^31 - 1 positions.
+ *
+ * @author joana
+ */
+public class ExplorerBuilder {
+    public static final int DEFAULT_RUN_POSITIONS = 1 << 20;
+
+    private static final int BATCH = 256;
+
+    private final ForkJoinPool pool;
+    private final int maxPlies;
+    private final Path tempDirectory;
+    private final int runPositions;
+    private final Queue<Table> tables = new ConcurrentLinkedQueue<>();
+    private final Queue<Path> runs = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<Table> table;
+    private final LongAdder games = new LongAdder();
+    private final LongAdder rejectedGames = new LongAdder();
+
+    /**
+     * @param maxPlies positions deeper than this into a game are not indexed
+     */
+    public ExplorerBuilder(ForkJoinPool pool, int maxPlies) {
+        this(pool, maxPlies, Paths.get(System.getProperty("java.io.tmpdir")), DEFAULT_RUN_POSITIONS);
+    }
+
+    /**
+     * @param maxPlies positions deeper than this into a game are not indexed
+     * @param tempDirectory where the sorted runs are written until the index is
+     * @param runPositions positions a worker counts in memory before it writes a run
+     */
+    public ExplorerBuilder(ForkJoinPool pool, int maxPlies, Path tempDirectory, int runPositions) {
+        this.pool = pool;
+        this.maxPlies = maxPlies;
+        this.tempDirectory = tempDirectory;
+        this.runPositions = Math.max(1, runPositions);
+        table = ThreadLocal.withInitial(() -> {
+            Table t = new Table();
+            tables.add(t);
+            return t;
+        });
+    }
+
+    public long getGames() {
+        return games.sum();
+    }
+
+    /**
+     * Games with an invalid starting position or an illegal move. Their
+     * moves up to the error are still indexed.
+     */
+    public long getRejectedGames() {
+        return rejectedGames.sum();
+    }
+
+    /**
+     * Reads every game of a PGN stream and indexes it. Returns when all of
+     * them are counted.
+     */
+    public void add(PgnReader reader) throws IOException {
+        int window = pool.getParallelism() * 4;
+        ArrayDeque<ForkJoinTask<?>> pending = new ArrayDeque<>(window);
+        List<PgnReader.Game> batch = new ArrayList<>(BATCH);
+        PgnReader.Game game;
+        try {
+            while((game = reader.next()) != null) {
+                batch.add(game);
+                if(batch.size() < BATCH) continue;
+                if(pending.size() == window) pending.poll().join();
+                List<PgnReader.Game> games = batch;
+                pending.add(pool.submit(() -> replay(games)));
+                batch = new ArrayList<>(BATCH);
+            }
+            if(!batch.isEmpty()) replay(batch);
+            while(!pending.isEmpty()) pending.poll().join();
+        } catch(UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void replay(List<PgnReader.Game> batch) {
+        Table t = table.get();
+        for(PgnReader.Game game : batch) {
+            games.increment();
+            if(!t.replay(game)) rejectedGames.increment();
+        }
+    }
+
+    /**
+     * Writes the index: a header, one fixed-size entry per position sorted by
+     * hash, then the continuations of every entry, most played first. The
+     * run files are deleted afterwards.
+     */
+    public void write(Path file) throws IOException {
+        for(Table t : tables) t.spill();
+
+        Path movesFile = Files.createTempFile(tempDirectory, "explorer", ".moves");
+        List<Run> open = new ArrayList<>();
+        try {
+            PriorityQueue<Run> queue = new PriorityQueue<>((a, b) -> Long.compare(a.hash, b.hash));
+            for(Path path : runs) {
+                Run run = new Run(path);
+                open.add(run);
+                if(run.next()) queue.add(run);
+            }
+
+            Node node = new Node();
+            long entries = 0;
+            long moveOffset = 0;
+            try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16));
+                    DataOutputStream moves = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(movesFile), 1 << 16))) {
+                out.writeInt(OpeningExplorer.MAGIC);
+                out.writeInt(OpeningExplorer.VERSION);
+                // the number of entries is filled in at the end
+                out.writeInt(0);
+                out.writeInt(0);
+                while(!queue.isEmpty()) {
+                    node.reset(queue.peek().hash);
+                    while(!queue.isEmpty() && queue.peek().hash == node.hash) {
+                        Run run = queue.poll();
+                        node.merge(run);
+                        if(run.next()) queue.add(run);
+                    }
+                    node.sortMoves();
+                    out.writeLong(node.hash);
+                    out.writeInt(node.games);
+                    out.writeInt(node.whiteWins);
+                    out.writeInt(node.draws);
+                    out.writeInt(node.blackWins);
+                    out.writeLong(moveOffset);
+                    out.writeInt(node.moveCount);
+                    out.writeInt(0);
+                    for(int i = 0; i < node.moveCount; i++) {
+                        moves.writeInt(node.moves[2 * i]);
+                        moves.writeInt(node.moves[2 * i + 1]);
+                    }
+                    moveOffset += node.moveCount;
+                    entries++;
+                }
+            }
+            if(entries > Integer.MAX_VALUE) throw new IOException("Too many positions for one index: " + entries);
+
+            try(FileChannel out = FileChannel.open(file, StandardOpenOption.WRITE);
+                    FileChannel in = FileChannel.open(movesFile, StandardOpenOption.READ)) {
+                out.write(ByteBuffer.allocate(4).putInt(0, (int) entries), 8);
+                long position = out.size();
+                long size = in.size();
+                for(long done = 0; done < size; ) done += out.transferFrom(in.position(done), position + done, size - done);
+            }
+        } finally {
+            for(Run run : open) run.close();
+            for(Path path : runs) Files.deleteIfExists(path);
+            runs.clear();
+            Files.deleteIfExists(movesFile);
+        }
+    }
+
+    /**
+     * Counts of one worker: open addressing on the position hash, with the
+     * continuations of each position in a linked list kept in one int array.
+     */
+    private class Table {
+        private final ChessMatch match = new ChessMatch();
+        private final int[] legalMoves = new int[256];
+
+        private int mask = (1 << 10) - 1;
+        private long[] keys = new long[mask + 1];
+        // games, white wins, draws and black wins; a slot with no games is free
+        private int[] counts = new int[4 * (mask + 1)];
+        private int[] firstMove = new int[mask + 1];
+        private int size;
+        // move, count and index of the next continuation of the same position, or -1
+        private int[] continuations = new int[3 * 1024];
+        private int continuationCount;
+
+        boolean replay(PgnReader.Game game) {
+            int result;
+            switch(game.getResult()) {
+                case "1-0": result = 1; break;
+                case "0-1": result = -1; break;
+                case "1/2-1/2": result = 0; break;
+                default: result = 2;
+            }
+            try {
+                match.setPosition(game.getFen() != null ? game.getFen() : ChessMatch.START_FEN);
+            } catch(ChessException e) {
+                return false;
+            }
+
+            List<String> moves = game.getMoves();
+            for(int ply = 0; ply <= Math.min(moves.size(), maxPlies); ply++) {
+                int slot = slot(match.getHash());
+                add(slot, result);
+                if(ply == moves.size() || ply == maxPlies) break;
+                int count = match.legalMoves(legalMoves);
+                int move;
+                try {
+                    move = San.parse(match, legalMoves, count, moves.get(ply));
+                } catch(ChessException e) {
+                    return false;
+                }
+                addMove(slot, move);
+                match.play(move);
+            }
+            return true;
+        }
+
+        /**
+         * Slot of the position, taken if it is new. May first write the
+         * table out as a run, or grow it.
+         */
+        private int slot(long hash) {
+            int slot = find(hash);
+            if(counts[4 * slot] != 0) return slot;
+            if(size >= runPositions) {
+                spill();
+                slot = find(hash);
+            } else if(size >= (mask + 1) / 4 * 3) {
+                grow();
+                slot = find(hash);
+            }
+            keys[slot] = hash;
+            firstMove[slot] = -1;
+            size++;
+            return slot;
+        }
+
+        /**
+         * Slot holding {@code hash}, or the free slot where it would go.
+         */
+        private int find(long hash) {
+            int slot = (int) (hash ^ hash >>> 32) & mask;
+            while(counts[4 * slot] != 0 && keys[slot] != hash) slot = (slot + 1) & mask;
+            return slot;
+        }
+
+        private void add(int slot, int result) {
+            counts[4 * slot]++;
+            if(result == 1) counts[4 * slot + 1]++;
+            else if(result == 0) counts[4 * slot + 2]++;
+            else if(result == -1) counts[4 * slot + 3]++;
+        }
+
+        private void addMove(int slot, int move) {
+            for(int i = firstMove[slot]; i >= 0; i = continuations[3 * i + 2]) {
+                if(continuations[3 * i] == move) {
+                    continuations[3 * i + 1]++;
+                    return;
+                }
+            }
+            if(3 * continuationCount == continuations.length) continuations = Arrays.copyOf(continuations, continuations.length * 2);
+            int i = continuationCount++;
+            continuations[3 * i] = move;
+            continuations[3 * i + 1] = 1;
+            continuations[3 * i + 2] = firstMove[slot];
+            firstMove[slot] = i;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            int[] oldCounts = counts;
+            int[] oldFirstMove = firstMove;
+            mask = mask * 2 + 1;
+            keys = new long[mask + 1];
+            counts = new int[4 * (mask + 1)];
+            firstMove = new int[mask + 1];
+            for(int old = 0; old < oldKeys.length; old++) {
+                if(oldCounts[4 * old] == 0) continue;
+                int slot = find(oldKeys[old]);
+                keys[slot] = oldKeys[old];
+                System.arraycopy(oldCounts, 4 * old, counts, 4 * slot, 4);
+                firstMove[slot] = oldFirstMove[old];
+            }
+        }
+
+        /**
+         * Writes the positions counted so far to a new run, sorted by hash,
+         * and empties the table.
+         */
+        void spill() {
+            if(size == 0) return;
+            long[] sorted = new long[size];
+            int n = 0;
+            for(int slot = 0; slot <= mask; slot++) {
+                if(counts[4 * slot] != 0) sorted[n++] = keys[slot];
+            }
+            Arrays.sort(sorted);
+            try {
+                Path path = Files.createTempFile(tempDirectory, "explorer", ".run");
+                runs.add(path);
+                try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16))) {
+                    for(long hash : sorted) {
+                        int slot = find(hash);
+                        out.writeLong(hash);
+                        for(int k = 0; k < 4; k++) out.writeInt(counts[4 * slot + k]);
+                        int moveCount = 0;
+                        for(int i = firstMove[slot]; i >= 0; i = continuations[3 * i + 2]) moveCount++;
+                        out.writeInt(moveCount);
+                        for(int i = firstMove[slot]; i >= 0; i = continuations[3 * i + 2]) {
+                            out.writeInt(continuations[3 * i]);
+                            out.writeInt(continuations[3 * i + 1]);
+                        }
+                    }
+                }
+            } catch(IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            Arrays.fill(counts, 0);
+            size = 0;
+            continuationCount = 0;
+        }
+    }
+
+    /**
+     * A run file read back one position at a time.
+     */
+    private static class Run {
+        private final DataInputStream in;
+        long hash;
+        int[] counts = new int[4];
+        int moveCount;
+        // move and count pairs
+        int[] moves = new int[16];
+
+        Run(Path path) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16));
+        }
+
+        /**
+         * Reads the next position, returning false at the end of the run.
+         */
+        boolean next() throws IOException {
+            try {
+                hash = in.readLong();
+            } catch(EOFException e) {
+                return false;
+            }
+            for(int k = 0; k < 4; k++) counts[k] = in.readInt();
+            moveCount = in.readInt();
+            if(moves.length < 2 * moveCount) moves = new int[2 * moveCount];
+            for(int i = 0; i < 2 * moveCount; i++) moves[i] = in.readInt();
+            return true;
+        }
+
+        void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /**
+     * One position being merged from the runs.
+     */
+    private static class Node {
+        long hash;
+        int games;
+        int whiteWins;
+        int draws;
+        int blackWins;
+        // move and count pairs
+        int[] moves = new int[16];
+        int moveCount;
+
+        void reset(long hash) {
+            this.hash = hash;
+            games = 0;
+            whiteWins = 0;
+            draws = 0;
+            blackWins = 0;
+            moveCount = 0;
+        }
+
+        void merge(Run run) {
+            games += run.counts[0];
+            whiteWins += run.counts[1];
+            draws += run.counts[2];
+            blackWins += run.counts[3];
+            for(int i = 0; i < run.moveCount; i++) addMove(run.moves[2 * i], run.moves[2 * i + 1]);
+        }
+
+        void addMove(int move, int count) {
+            for(int i = 0; i < moveCount; i++) {
+                if(moves[2 * i] == move) {
+                    moves[2 * i + 1] += count;
+                    return;
+                }
+            }
+            if(2 * moveCount == moves.length) moves = Arrays.copyOf(moves, moves.length * 2);
+            moves[2 * moveCount] = move;
+            moves[2 * moveCount + 1] = count;
+            moveCount++;
+        }
+
+        /**
+         * Most played first, and by move between equals, so the index does
+         * not depend on which worker counted what.
+         */
+        void sortMoves() {
+            // insertion sort, positions rarely have more than a handful of continuations
+            for(int i = 1; i < moveCount; i++) {
+                int move = moves[2 * i];
+                int count = moves[2 * i + 1];
+                int j = i - 1;
+                while(j >= 0 && (moves[2 * j + 1] < count || moves[2 * j + 1] == count && moves[2 * j] > move)) {
+                    moves[2 * j + 2] = moves[2 * j];
+                    moves[2 * j + 3] = moves[2 * j + 1];
+                    j--;
+                }
+                moves[2 * j + 2] = move;
+                moves[2 * j + 3] = count;
+            }
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package chess.explorer;
+
+import chess.ChessMatch;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Read-only view of an index written by {@link ExplorerBuilder}, mapped
+ * into memory. A lookup is a binary search over entries sorted by
+ * {@link ChessMatch#getHash()} and allocates nothing; positions are then
+ * read by entry index. Any number of threads may query the same instance.
+ * <p>
+ * A single mapping cannot exceed 2 GB, so the file is mapped in segments of
+ * 1 GB. Each one reaches a little into the next, so no value read straddles
+ * two of them; the index size is limited only by the address space.
+ *
+ * @author joana
+ */
+public class OpeningExplorer {
+    static final int MAGIC = 0x43485850;
+    static final int VERSION = 2;
+
+    private static final int HEADER = 16;
+    private static final int ENTRY = 40;
+    private static final int MOVE = 8;
+
+    private static final int SEGMENT_BITS = 30;
+    private static final long SEGMENT = 1L << SEGMENT_BITS;
+    private static final int OVERLAP = 64;
+
+    private final MappedByteBuffer[] segments;
+    private final int entries;
+    private final long movesStart;
+
+    private OpeningExplorer(MappedByteBuffer[] segments, long size) throws IOException {
+        this.segments = segments;
+        if(size < HEADER || getInt(0) != MAGIC || getInt(4) != VERSION)
+            throw new IOException("Not an opening explorer index");
+        entries = getInt(8);
+        movesStart = HEADER + (long) entries * ENTRY;
+    }
+
+    /**
+     * Maps an index file.
+     */
+    public static OpeningExplorer open(Path file) throws IOException {
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            MappedByteBuffer[] segments = new MappedByteBuffer[(int) ((size + SEGMENT - 1) >>> SEGMENT_BITS)];
+            for(int i = 0; i < segments.length; i++) {
+                long start = i * SEGMENT;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT + OVERLAP, size - start));
+            }
+            return new OpeningExplorer(segments, size);
+        }
+    }
+
+    public int size() {
+        return entries;
+    }
+
+    /**
+     * Entry index of the position with this hash, or -1 if it is not in the index.
+     */
+    public int find(long hash) {
+        int low = 0;
+        int high = entries - 1;
+        while(low <= high) {
+            int mid = (low + high) >>> 1;
+            long value = getLong(entry(mid));
+            if(value < hash) low = mid + 1;
+            else if(value > hash) high = mid - 1;
+            else return mid;
+        }
+        return -1;
+    }
+
+    public int find(ChessMatch match) {
+        return find(match.getHash());
+    }
+
+    public int getGames(int entry) {
+        return getInt(entry(entry) + 8);
+    }
+
+    public int getWhiteWins(int entry) {
+        return getInt(entry(entry) + 12);
+    }
+
+    public int getDraws(int entry) {
+        return getInt(entry(entry) + 16);
+    }
+
+    public int getBlackWins(int entry) {
+        return getInt(entry(entry) + 20);
+    }
+
+    /**
+     * Number of continuations played from the position, most played first.
+     */
+    public int getMoveCount(int entry) {
+        return getInt(entry(entry) + 32);
+    }
+
+    /**
+     * A continuation, packed as in {@link chess.Move}.
+     */
+    public int getMove(int entry, int index) {
+        return getInt(moveAddress(entry, index));
+    }
+
+    public int getMoveGames(int entry, int index) {
+        return getInt(moveAddress(entry, index) + 4);
+    }
+
+    private static long entry(int entry) {
+        return HEADER + (long) entry * ENTRY;
+    }
+
+    private long moveAddress(int entry, int index) {
+        return movesStart + (getLong(entry(entry) + 24) + index) * MOVE;
+    }
+
+    private int getInt(long address) {
+        return segments[(int) (address >>> SEGMENT_BITS)].getInt((int) (address & (SEGMENT - 1)));
+    }
+
+    private long getLong(long address) {
+        return segments[(int) (address >>> SEGMENT_BITS)].getLong((int) (address & (SEGMENT - 1)));
+    }
+}
@@ -0,0 +1,134 @@
+package chess.explorer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits a PGN stream into games: the tags that matter for the explorer and
+ * the main line in SAN. Comments, variations, numeric annotation glyphs and
+ * move numbers are skipped.
+ *
+ * @author joana
+ */
+public class PgnReader {
+    private final BufferedReader in;
+    private String pending;
+
+    public PgnReader(BufferedReader in) {
+        this.in = in;
+    }
+
+    /**
+     * The next game, or null at the end of the stream.
+     */
+    public Game next() throws IOException {
+        Game game = new Game();
+        boolean started = false;
+        boolean inMoves = false;
+        StringBuilder moveText = new StringBuilder();
+
+        String line;
+        while((line = pending != null ? pending : in.readLine()) != null) {
+            pending = null;
+            line = line.trim();
+            if(line.startsWith("[")) {
+                // a tag after the move text belongs to the next game
+                if(inMoves) {
+                    pending = line;
+                    break;
+                }
+                started = true;
+                readTag(game, line);
+            } else if(!line.isEmpty() && !line.startsWith("%")) {
+                started = true;
+                inMoves = true;
+                // a semicolon starts a comment running to the end of the line
+                int semicolon = line.indexOf(';');
+                moveText.append(semicolon < 0 ? line : line.substring(0, semicolon)).append(' ');
+            }
+        }
+        if(!started) return null;
+        readMoves(game, moveText);
+        return game;
+    }
+
+    private static void readTag(Game game, String line) {
+        int space = line.indexOf(' ');
+        int open = line.indexOf('"');
+        int close = line.lastIndexOf('"');
+        if(space < 0 || open < 0 || close <= open) return;
+        String name = line.substring(1, space);
+        String value = line.substring(open + 1, close);
+        if(name.equals("Result")) game.result = value;
+        else if(name.equals("FEN")) game.fen = value;
+    }
+
+    private static void readMoves(Game game, StringBuilder text) {
+        int depth = 0;
+        boolean comment = false;
+        StringBuilder token = new StringBuilder();
+        for(int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if(comment) {
+                if(c == '}') comment = false;
+                continue;
+            }
+            if(c == '{' || c == '(' || c == ')' || Character.isWhitespace(c)) {
+                addToken(game, token, depth);
+                token.setLength(0);
+                if(c == '{') comment = true;
+                else if(c == '(') depth++;
+                else if(c == ')') depth--;
+                continue;
+            }
+            token.append(c);
+        }
+    }
+
+    private static void addToken(Game game, StringBuilder token, int depth) {
+        if(token.length() == 0 || depth > 0) return;
+        String s = token.toString();
+        if(s.startsWith("$")) return;
+        if(s.equals("1-0") || s.equals("0-1") || s.equals("1/2-1/2") || s.equals("*")) {
+            if(game.result == null) game.result = s;
+            return;
+        }
+        // move numbers may be glued to the move, as in 1.e4 or 12...Nf6, but 0-0 is castling
+        int start = 0;
+        while(start < s.length() && Character.isDigit(s.charAt(start))) start++;
+        if(start == s.length()) return;
+        if(start > 0 && s.charAt(start) == '.') {
+            while(start < s.length() && s.charAt(start) == '.') start++;
+        } else start = 0;
+        if(start < s.length()) game.moves.add(s.substring(start));
+    }
+
+    /**
+     * One game of a PGN file.
+     */
+    public static class Game {
+        private String result;
+        private String fen;
+        private final List<String> moves = new ArrayList<>();
+
+        /**
+         * "1-0", "0-1", "1/2-1/2" or "*" when unknown.
+         */
+        public String getResult() {
+            return result == null ? "*" : result;
+        }
+
+        /**
+         * Starting position from the FEN tag, or null for the initial position.
+         */
+        public String getFen() {
+            return fen;
+        }
+
+        public List<String> getMoves() {
+            return moves;
+        }
+    }
+}
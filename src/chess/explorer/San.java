@@ -0,0 +1,105 @@
+package chess.explorer;
+
+import chess.ChessMatch;
+import chess.ChessPiece;
+import chess.Move;
+import chess.PieceType;
+import exceptions.ChessException;
+import exceptions.ChessException.Reason;
+
+/**
+ * Reads moves in Standard Algebraic Notation, as found in PGN files, by
+ * matching them against the legal moves of a match.
+ *
+ * @author joana
+ */
+public final class San {
+    private San() {
+    }
+
+    /**
+     * Finds the move {@code san} among the {@code count} legal moves in
+     * {@code legalMoves} of {@code match}.
+     *
+     * @throws ChessException if no legal move or more than one matches
+     */
+    public static int parse(ChessMatch match, int[] legalMoves, int count, String san) {
+        String s = san;
+        while(!s.isEmpty() && "+#!?".indexOf(s.charAt(s.length() - 1)) >= 0) s = s.substring(0, s.length() - 1);
+
+        if(s.equals("O-O") || s.equals("0-0") || s.equals("O-O-O") || s.equals("0-0-0")) {
+            int offset = s.length() == 3 ? 2 : -2;
+            for(int i = 0; i < count; i++) {
+                int move = legalMoves[i];
+                ChessPiece piece = match.pieceAt(Move.source(move));
+                if(piece.getType() == PieceType.KING && Move.target(move) == Move.source(move) + offset) return move;
+            }
+            throw invalid(san);
+        }
+
+        int promotion = Move.PROMOTION_NONE;
+        int equals = s.indexOf('=');
+        if(equals >= 0) {
+            if(equals != s.length() - 2) throw invalid(san);
+            promotion = promotion(s.charAt(equals + 1), san);
+            s = s.substring(0, equals);
+        } else if(s.length() > 2 && "NBRQ".indexOf(s.charAt(s.length() - 1)) >= 0 && Character.isDigit(s.charAt(s.length() - 2))) {
+            promotion = promotion(s.charAt(s.length() - 1), san);
+            s = s.substring(0, s.length() - 1);
+        }
+        if(s.length() < 2) throw invalid(san);
+
+        int target = Move.parseSquare(s.substring(s.length() - 2));
+        PieceType type = PieceType.PAWN;
+        int start = 0;
+        char first = s.charAt(0);
+        if("KQRBN".indexOf(first) >= 0) {
+            type = pieceType(first);
+            start = 1;
+        }
+        // what is left between the piece letter and the target is disambiguation
+        int column = -1;
+        int row = -1;
+        for(int i = start; i < s.length() - 2; i++) {
+            char c = s.charAt(i);
+            if(c >= 'a' && c <= 'h') column = c - 'a';
+            else if(c >= '1' && c <= '8') row = '8' - c;
+            else if(c != 'x' && c != '-' && c != ':') throw invalid(san);
+        }
+
+        int found = Move.NONE;
+        for(int i = 0; i < count; i++) {
+            int move = legalMoves[i];
+            int source = Move.source(move);
+            if(Move.target(move) != target || Move.promotion(move) != promotion) continue;
+            if(match.pieceAt(source).getType() != type) continue;
+            if(column >= 0 && (source & 7) != column) continue;
+            if(row >= 0 && (source >>> 3) != row) continue;
+            if(found != Move.NONE) throw new ChessException(Reason.INVALID_MOVE, "Ambiguous move: " + san);
+            found = move;
+        }
+        if(found == Move.NONE) throw invalid(san);
+        return found;
+    }
+
+    private static int promotion(char c, String san) {
+        switch(c) {
+            case 'N': return Move.PROMOTION_KNIGHT;
+            case 'B': return Move.PROMOTION_BISHOP;
+            case 'R': return Move.PROMOTION_ROOK;
+            case 'Q': return Move.PROMOTION_QUEEN;
+            default: throw invalid(san);
+        }
+    }
+
+    private static PieceType pieceType(char c) {
+        for(PieceType type : PieceType.values()) {
+            if(type.getLetter().charAt(0) == c) return type;
+        }
+        throw new IllegalArgumentException("Not a piece letter: " + c);
+    }
+
+    private static ChessException invalid(String san) {
+        return new ChessException(Reason.INVALID_MOVE, "Illegal move: " + san);
+    }
+}
@@ -1,10 +1,10 @@
 package chess.pieces;
 
 import boardgame.Board;
-import boardgame.Position;
 import chess.ChessMatch;
 import chess.ChessPiece;
 import chess.Color;
+import chess.PieceType;
 
 /**
  *
@@ -18,97 +18,62 @@ public class King extends ChessPiece {
         this.chessMatch = chessMatch;
     }
 
+    @Override
+    public PieceType getType() {
+        return PieceType.KING;
+    }
+
     @Override
     public String toString() {
         return "K";
     }
 
-    private boolean canMove(Position position){
-        ChessPiece p = (ChessPiece)getBoard().piece(position);
-        return p == null || p.getColor() != getColor();
-    }
-    
-    private boolean testRookCastling(Position position){
-        ChessPiece p = (ChessPiece)getBoard().piece(position);
+    private boolean testRookCastling(int cell){
+        ChessPiece p = (ChessPiece)getBoard().pieceInCell(cell);
         return p != null && p instanceof Rook && p.getColor() == getColor() && p.getMoveCount() == 0;
     }
     
     @Override
-    public boolean[][] possibleMoves() {
-        boolean[][] mat = new boolean[getBoard().getRows()][getBoard().getColumns()];
-        Position p = new Position(0,0);
+    public int possibleMoves(int[] targets) {
+        int count = 0;
         
         //above
-        p.setValues(position.getRow() - 1, position.getColumn());
-        if(getBoard().positionExists(p) && canMove(p)){
-            mat[p.getRow()][p.getColumn()] = true;
-        }
-        
+        count = step(targets, count, -1, 0);
         //below
-        p.setValues(position.getRow() + 1, position.getColumn());
-        if(getBoard().positionExists(p) && canMove(p)){
-            mat[p.getRow()][p.getColumn()] = true;
-        }
-        
+        count = step(targets, count, 1, 0);
         //left
-        p.setValues(position.getRow(), position.getColumn() - 1);
-        if(getBoard().positionExists(p) && canMove(p)){
-            mat[p.getRow()][p.getColumn()] = true;
-        }
-        
+        count = step(targets, count, 0, -1);
         //right
-        p.setValues(position.getRow(), position.getColumn() + 1);
-        if(getBoard().positionExists(p) && canMove(p)){
-            mat[p.getRow()][p.getColumn()] = true;
-        }        
-        
+        count = step(targets, count, 0, 1);
         //nw
-        p.setValues(position.getRow() - 1, position.getColumn() - 1);
-        if(getBoard().positionExists(p) && canMove(p)){
-            mat[p.getRow()][p.getColumn()] = true;
-        }        
-        
+        count = step(targets, count, -1, -1);
         //ne
-        p.setValues(position.getRow() - 1, position.getColumn() + 1);
-        if(getBoard().positionExists(p) && canMove(p)){
-            mat[p.getRow()][p.getColumn()] = true;
-        } 
-
+        count = step(targets, count, -1, 1);
         //sw
-        p.setValues(position.getRow() + 1, position.getColumn() - 1);
-        if(getBoard().positionExists(p) && canMove(p)){
-            mat[p.getRow()][p.getColumn()] = true;
-        } 
-
+        count = step(targets, count, 1, -1);
         //se
-        p.setValues(position.getRow() + 1, position.getColumn() + 1);
-        if(getBoard().positionExists(p) && canMove(p)){
-            mat[p.getRow()][p.getColumn()] = true;
-        }         
+        count = step(targets, count, 1, 1);
         
-        //special move: castling
-        if(getMoveCount() == 0 && !chessMatch.isCheck()){
-            //kingside rook
-            Position posR1 = new Position(position.getRow(), position.getColumn() + 3);
-            if(testRookCastling(posR1)){
-                Position p1 = new Position(position.getRow(), position.getColumn() + 1);
-                Position p2 = new Position(position.getRow(), position.getColumn() + 2);
+        //special move: castling, not out of check nor across an attacked square
+        //a king without a match, as snapshots build them, does not castle
+        if(chessMatch != null && getMoveCount() == 0 && !chessMatch.isCheck()){
+            Board board = getBoard();
+            int cell = board.cellOf(square);
+            Color opponent = getColor() == Color.WHITE ? Color.BLACK : Color.WHITE;
             
-                if(getBoard().piece(p1) == null && getBoard().piece(p2) == null)
-                    mat[position.getRow()][position.getColumn() + 2] = true;
+            //kingside rook
+            if(board.columnOf(cell) + 3 < board.getColumns() && testRookCastling(cell + 3)){
+                if(board.isEmpty(cell + 1) && board.isEmpty(cell + 2) && !chessMatch.isAttacked(opponent, square + 1))
+                    targets[count++] = square + 2;
             }
             
             //queenside rook
-            Position posR2 = new Position(position.getRow(), position.getColumn() - 4);
-            if(testRookCastling(posR2)){
-                Position p1 = new Position(position.getRow(), position.getColumn() - 1);
-                Position p2 = new Position(position.getRow(), position.getColumn() - 2);
-                Position p3 = new Position(position.getRow(), position.getColumn() - 3);
-                
-                if(getBoard().piece(p1) == null && getBoard().piece(p2) == null && getBoard().piece(p3) == null)
-                    mat[position.getRow()][position.getColumn() - 2] = true;
+            if(board.columnOf(cell) - 4 >= 0 && testRookCastling(cell - 4)){
+                if(board.isEmpty(cell - 1) && board.isEmpty(cell - 2) && board.isEmpty(cell - 3)
+                        && !chessMatch.isAttacked(opponent, square - 1))
+                    targets[count++] = square - 2;
             }            
         }
-        return mat;
+        return count;
     }
 }
\ No newline at end of file
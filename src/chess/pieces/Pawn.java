@@ -1,10 +1,10 @@
 package chess.pieces;
 
 import boardgame.Board;
-import boardgame.Position;
 import chess.ChessMatch;
 import chess.ChessPiece;
 import chess.Color;
+import chess.PieceType;
 
 /**
  *
@@ -19,84 +19,50 @@ public class Pawn extends ChessPiece {
     }
     
     @Override
-    public boolean[][] possibleMoves(){
-        boolean[][] mat = new boolean[getBoard().getRows()][getBoard().getColumns()];
-        Position p = new Position(0, 0);
+    public int possibleMoves(int[] targets){
+        int count = 0;
+        Board board = getBoard();
+        int cell = board.cellOf(square);
+        // white pawns move up the board, towards row 0
+        int forward = board.offset(getColor() == Color.WHITE ? -1 : 1, 0);
         
-        if(getColor() == Color.WHITE){
-            p.setValues(position.getRow() - 1, position.getColumn());
-            if(getBoard().positionExists(p) && !getBoard().thereIsAPiece(p)){
-                mat[p.getRow()][p.getColumn()] = true;
-            }
-            
-            p.setValues(position.getRow() - 2, position.getColumn());
-            Position p2 = new Position(position.getRow() - 1, position.getColumn());
-            if(getBoard().positionExists(p) && !getBoard().thereIsAPiece(p) && getBoard().positionExists(p2) && !getBoard().thereIsAPiece(p2) && getMoveCount() == 0){
-                mat[p.getRow()][p.getColumn()] = true;
-            }
-
-            p.setValues(position.getRow() - 1, position.getColumn() - 1);
-            if(getBoard().positionExists(p) && isThereOpponentPiece(p)){
-                mat[p.getRow()][p.getColumn()] = true;
-            }          
+        if(board.isEmpty(cell + forward)){
+            targets[count++] = board.squareOf(cell + forward);
             
-            p.setValues(position.getRow() - 1, position.getColumn() + 1);
-            if(getBoard().positionExists(p) && isThereOpponentPiece(p)){
-                mat[p.getRow()][p.getColumn()] = true;
-            }              
-            
-            //special move: en passant white
-            if(position.getRow() == 3){
-                Position left = new Position(position.getRow(), position.getColumn() - 1);
-                if(getBoard().positionExists(left) && isThereOpponentPiece(left) && getBoard().piece(left) == chessMatch.getEnPassantVulnerable()){
-                    mat[left.getRow() - 1][left.getColumn()] = true;
-                }
-                
-                Position right = new Position(position.getRow(), position.getColumn() + 1);
-                if(getBoard().positionExists(right) && isThereOpponentPiece(right) && getBoard().piece(right) == chessMatch.getEnPassantVulnerable()){
-                    mat[right.getRow() - 1][right.getColumn()] = true;
-                }
-            }           
-            
-        } else {
-            p.setValues(position.getRow() + 1, position.getColumn());
-            if(getBoard().positionExists(p) && !getBoard().thereIsAPiece(p)){
-                mat[p.getRow()][p.getColumn()] = true;
+            if(getMoveCount() == 0 && board.isEmpty(cell + 2 * forward)){
+                targets[count++] = board.squareOf(cell + 2 * forward);
             }
-            
-            p.setValues(position.getRow() + 2, position.getColumn());
-            Position p2 = new Position(position.getRow() + 1, position.getColumn());
-            if(getBoard().positionExists(p) && !getBoard().thereIsAPiece(p) && getBoard().positionExists(p2) && !getBoard().thereIsAPiece(p2) && getMoveCount() == 0){
-                mat[p.getRow()][p.getColumn()] = true;
+        }
+        
+        if(isThereOpponentPiece(cell + forward - 1)){
+            targets[count++] = board.squareOf(cell + forward - 1);
+        }          
+        
+        if(isThereOpponentPiece(cell + forward + 1)){
+            targets[count++] = board.squareOf(cell + forward + 1);
+        }              
+        
+        //special move: en passant, not for a pawn without a match
+        if(chessMatch != null && board.rowOf(cell) == (getColor() == Color.WHITE ? 3 : 4)){
+            int left = cell - 1;
+            if(isThereOpponentPiece(left) && board.pieceInCell(left) == chessMatch.getEnPassantVulnerable()){
+                targets[count++] = board.squareOf(left + forward);
             }
-
-            p.setValues(position.getRow() + 1, position.getColumn() - 1);
-            if(getBoard().positionExists(p) && isThereOpponentPiece(p)){
-                mat[p.getRow()][p.getColumn()] = true;
-            }          
             
-            p.setValues(position.getRow() + 1, position.getColumn() + 1);
-            if(getBoard().positionExists(p) && isThereOpponentPiece(p)){
-                mat[p.getRow()][p.getColumn()] = true;
-            }              
-            
-            //special move: en passant black
-            if(position.getRow() == 4){
-                Position left = new Position(position.getRow(), position.getColumn() - 1);
-                if(getBoard().positionExists(left) && isThereOpponentPiece(left) && getBoard().piece(left) == chessMatch.getEnPassantVulnerable()){
-                    mat[left.getRow() + 1][left.getColumn()] = true;
-                }
-                
-                Position right = new Position(position.getRow(), position.getColumn() + 1);
-                if(getBoard().positionExists(right) && isThereOpponentPiece(right) && getBoard().piece(right) == chessMatch.getEnPassantVulnerable()){
-                    mat[right.getRow() + 1][right.getColumn()] = true;
-                }
+            int right = cell + 1;
+            if(isThereOpponentPiece(right) && board.pieceInCell(right) == chessMatch.getEnPassantVulnerable()){
+                targets[count++] = board.squareOf(right + forward);
             }
         }
         
-        return mat;
+        return count;
     }    
     
+    @Override
+    public PieceType getType() {
+        return PieceType.PAWN;
+    }
+
     @Override
     public String toString(){
         return "P";
@@ -0,0 +1,243 @@
+package chess.session;
+
+import chess.ChessMatch;
+import chess.ChessPiece;
+import chess.ChessPosition;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Holds many open matches in a bounded heap. The most recently used ones
+ * stay live in an LRU of {@code capacity} matches; the least recently used
+ * is written with {@link ChessMatch#toBytes()} to a spill file and dropped
+ * from the heap, and comes back from the file the next time its session is
+ * used. Per session the heap keeps one long, so millions of idle games fit.
+ * <p>
+ * The spill file is a log: records are appended and the space of a record
+ * read back becomes garbage, which is compacted away once it outweighs the
+ * live records. The file is temporary and deleted on {@link #close()}.
+ * All methods are synchronized.
+ *
+ * @author joana
+ */
+public class SessionStore implements AutoCloseable {
+    // index entries: offset << 16 | length of a spilled record, or one of these
+    private static final long FREE = -1;
+    private static final long LIVE = 0;
+    private static final long MIN_COMPACT_SIZE = 1 << 20;
+
+    private final Path directory;
+    private final int capacity;
+    private final LinkedHashMap<Integer, ChessMatch> live;
+
+    private FileChannel file;
+    private long fileSize;
+    private long garbage;
+
+    private long[] index = new long[1024];
+    private int sessions;
+    private int nextId;
+    private int[] freeIds = new int[64];
+    private int freeCount;
+
+    private long spills;
+    private long resumes;
+
+    /**
+     * @param capacity how many matches are kept live
+     * @param directory where the spill file is created
+     */
+    public SessionStore(int capacity, Path directory) throws IOException {
+        if(capacity < 1) throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        this.capacity = capacity;
+        this.directory = directory;
+        live = new LinkedHashMap<>(capacity * 4 / 3 + 1, 0.75f, true);
+        file = openSpillFile();
+    }
+
+    /**
+     * Opens a session with a new match and returns its id.
+     */
+    public int create() {
+        return add(new ChessMatch());
+    }
+
+    /**
+     * Opens a session holding {@code match} and returns its id. The store
+     * owns the match from now on.
+     */
+    public synchronized int add(ChessMatch match) {
+        int id;
+        if(freeCount > 0) id = freeIds[--freeCount];
+        else {
+            id = nextId++;
+            if(id == index.length) index = Arrays.copyOf(index, id * 2);
+        }
+        index[id] = LIVE;
+        sessions++;
+        live.put(id, match);
+        spillEldest();
+        return id;
+    }
+
+    /**
+     * The match of a session, read back from the spill file if it is not
+     * live. The returned match may be spilled again by any later call, so
+     * it must not be kept or changed after that; {@link #performChessMove}
+     * and {@link #replacePromotedPiece} do both steps under the lock.
+     */
+    public synchronized ChessMatch get(int id) {
+        ChessMatch match = live.get(id);
+        if(match != null) return match;
+        long entry = entry(id);
+        int length = (int)(entry & 0xFFFF);
+        long offset = entry >>> 16;
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        try {
+            while(buffer.hasRemaining()) {
+                if(file.read(buffer, offset + buffer.position()) < 0)
+                    throw new IOException("Spill file ends inside session " + id);
+            }
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        match = new ChessMatch(buffer.array());
+        index[id] = LIVE;
+        garbage += length;
+        resumes++;
+        live.put(id, match);
+        spillEldest();
+        return match;
+    }
+
+    public synchronized ChessPiece performChessMove(int id, ChessPosition source, ChessPosition target) {
+        return get(id).performChessMove(source, target);
+    }
+
+    public synchronized ChessPiece replacePromotedPiece(int id, String type) {
+        return get(id).replacePromotedPiece(type);
+    }
+
+    /**
+     * Closes a session; its id may be handed out again.
+     */
+    public synchronized void remove(int id) {
+        long entry = entry(id);
+        if(entry == LIVE) live.remove(id);
+        else garbage += entry & 0xFFFF;
+        index[id] = FREE;
+        sessions--;
+        if(freeCount == freeIds.length) freeIds = Arrays.copyOf(freeIds, freeCount * 2);
+        freeIds[freeCount++] = id;
+    }
+
+    public synchronized int size() {
+        return sessions;
+    }
+
+    public synchronized int getLiveCount() {
+        return live.size();
+    }
+
+    public synchronized long getSpillFileSize() {
+        return fileSize;
+    }
+
+    public synchronized long getSpills() {
+        return spills;
+    }
+
+    public synchronized long getResumes() {
+        return resumes;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        live.clear();
+        file.close();
+    }
+
+    private long entry(int id) {
+        if(id < 0 || id >= nextId || index[id] == FREE)
+            throw new IllegalArgumentException("There is no session " + id);
+        return index[id];
+    }
+
+    private void spillEldest() {
+        if(live.size() <= capacity) return;
+        Iterator<Map.Entry<Integer, ChessMatch>> it = live.entrySet().iterator();
+        Map.Entry<Integer, ChessMatch> eldest = it.next();
+        byte[] record = eldest.getValue().toBytes();
+        try {
+            if(garbage > fileSize / 2 && fileSize >= MIN_COMPACT_SIZE) compact();
+            write(ByteBuffer.wrap(record), fileSize);
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        index[eldest.getKey()] = fileSize << 16 | record.length;
+        fileSize += record.length;
+        spills++;
+        it.remove();
+    }
+
+    /**
+     * Copies the spilled records to a new file in index order and drops the old one.
+     */
+    private void compact() throws IOException {
+        FileChannel compacted = openSpillFile();
+        // the index changes only once the copy is complete
+        long[] moved = index.clone();
+        long size = 0;
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+            for(int id = 0; id < nextId; id++) {
+                long entry = index[id];
+                if(entry == FREE || entry == LIVE) continue;
+                int length = (int)(entry & 0xFFFF);
+                if(buffer.remaining() < length) {
+                    buffer.flip();
+                    while(buffer.hasRemaining()) compacted.write(buffer);
+                    buffer.clear();
+                }
+                buffer.limit(buffer.position() + length);
+                long offset = entry >>> 16;
+                while(buffer.hasRemaining()) {
+                    if(file.read(buffer, offset + length - buffer.remaining()) < 0)
+                        throw new IOException("Spill file ends inside session " + id);
+                }
+                buffer.limit(buffer.capacity());
+                moved[id] = size << 16 | length;
+                size += length;
+            }
+            buffer.flip();
+            while(buffer.hasRemaining()) compacted.write(buffer);
+        } catch(IOException e) {
+            compacted.close();
+            throw e;
+        }
+        file.close();
+        file = compacted;
+        index = moved;
+        fileSize = size;
+        garbage = 0;
+    }
+
+    private void write(ByteBuffer buffer, long position) throws IOException {
+        while(buffer.hasRemaining()) file.write(buffer, position + buffer.position());
+    }
+
+    private FileChannel openSpillFile() throws IOException {
+        Path path = Files.createTempFile(directory, "sessions", ".spill");
+        return FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.DELETE_ON_CLOSE);
+    }
+}
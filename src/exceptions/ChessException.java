@@ -5,7 +5,35 @@ package exceptions;
  * @author joana
  */
 public class ChessException extends BoardException {
+    /**
+     * Why a move or input was rejected, so callers can tell the cases apart
+     * without parsing the message.
+     */
+    public enum Reason {
+        NO_PIECE,
+        NOT_YOUR_PIECE,
+        NO_POSSIBLE_MOVES,
+        INVALID_TARGET,
+        SELF_CHECK,
+        INVALID_POSITION,
+        INVALID_MOVE,
+        INVALID_FEN,
+        INVALID_CHECKPOINT,
+        OTHER
+    }
+    
+    private final Reason reason;
+    
     public ChessException(String msg){
+        this(Reason.OTHER, msg);
+    }
+    
+    public ChessException(Reason reason, String msg){
         super(msg);
+        this.reason = reason;
+    }
+
+    public Reason getReason() {
+        return reason;
     }
-}
\ No newline at end of file
+}
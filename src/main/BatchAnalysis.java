@@ -0,0 +1,134 @@
+package main;
+
+import chess.ChessMatch;
+import chess.Move;
+import chess.engine.Search;
+import chess.engine.SearchInfo;
+import chess.engine.SearchLimits;
+import exceptions.ChessException;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Analyzes a file of positions, one FEN per line, and writes one line per
+ * position with the best move, score and node count, in the order of the
+ * input. Positions are searched in parallel on a {@link ForkJoinPool}; each
+ * worker thread keeps its own match and search and reuses them for every
+ * position it gets. Only a bounded window of positions is in flight, so
+ * inputs of any size are streamed.
+ * <p>
+ * Usage: {@code BatchAnalysis <input> <output> [--depth n] [--nodes n] [--threads n]}
+ *
+ * @author joana
+ */
+public class BatchAnalysis {
+    // positions queued per worker, enough to keep every worker busy while results are written
+    private static final int WINDOW_PER_THREAD = 64;
+
+    private final ForkJoinPool pool;
+    private final SearchLimits limits;
+    private final ThreadLocal<Worker> workers;
+
+    public BatchAnalysis(ForkJoinPool pool, SearchLimits limits) {
+        this.pool = pool;
+        this.limits = limits;
+        workers = ThreadLocal.withInitial(Worker::new);
+    }
+
+    /**
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) throws IOException {
+        if(args.length < 2) {
+            System.err.println("Usage: BatchAnalysis <input> <output> [--depth n] [--nodes n] [--threads n]");
+            System.exit(2);
+        }
+        SearchLimits limits = new SearchLimits();
+        int threads = Runtime.getRuntime().availableProcessors();
+        try {
+            for(int i = 2; i < args.length; i++) {
+                switch(args[i]) {
+                    case "--depth": limits.setDepth(Integer.parseInt(args[++i])); break;
+                    case "--nodes": limits.setNodes(Long.parseLong(args[++i])); break;
+                    case "--threads": threads = Integer.parseInt(args[++i]); break;
+                    default: throw new IllegalArgumentException("Unknown option " + args[i]);
+                }
+            }
+        } catch(IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.err.println("Invalid options: " + e.getMessage());
+            System.exit(2);
+        }
+        if(limits.getDepth() == 0 && limits.getNodes() == 0) limits.setDepth(6);
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        long start = System.nanoTime();
+        long positions;
+        try(BufferedReader in = Files.newBufferedReader(Paths.get(args[0]), StandardCharsets.UTF_8);
+                BufferedWriter out = Files.newBufferedWriter(Paths.get(args[1]), StandardCharsets.UTF_8)) {
+            positions = new BatchAnalysis(pool, limits).run(in, out);
+        } finally {
+            pool.shutdown();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.err.printf("%d positions in %.1f s, %.1f positions/s on %d threads%n",
+                positions, seconds, positions / Math.max(seconds, 1e-9), threads);
+    }
+
+    /**
+     * Analyzes every non-empty line of {@code in} and writes the results to
+     * {@code out} in the same order. Returns the number of positions.
+     */
+    public long run(BufferedReader in, BufferedWriter out) throws IOException {
+        int window = pool.getParallelism() * WINDOW_PER_THREAD;
+        ArrayDeque<ForkJoinTask<String>> pending = new ArrayDeque<>(window);
+        long positions = 0;
+        String line;
+        while((line = in.readLine()) != null) {
+            String fen = line.trim();
+            if(fen.isEmpty()) continue;
+            if(pending.size() == window) write(pending.poll(), out);
+            pending.add(pool.submit(() -> workers.get().analyze(fen)));
+            positions++;
+        }
+        while(!pending.isEmpty()) write(pending.poll(), out);
+        return positions;
+    }
+
+    private static void write(ForkJoinTask<String> result, BufferedWriter out) throws IOException {
+        out.write(result.join());
+        out.newLine();
+    }
+
+    private class Worker {
+        private final ChessMatch match = new ChessMatch();
+        private final Search search = new Search();
+        private final StringBuilder sb = new StringBuilder(128);
+
+        String analyze(String fen) {
+            sb.setLength(0);
+            sb.append(fen).append('\t');
+            try {
+                match.setPosition(fen);
+            } catch(ChessException e) {
+                return sb.append("error\t").append(e.getMessage()).toString();
+            }
+            // results must not depend on which positions this worker analyzed before
+            search.clear();
+            SearchInfo info = search.search(match, limits);
+            if(info.getBestMove() == Move.NONE) {
+                return sb.append("none\t").append(match.isCheck() ? "mated" : "stalemate").append("\t0").toString();
+            }
+            sb.append(Move.toUci(info.getBestMove())).append('\t');
+            if(info.isMateScore()) sb.append("mate ").append(info.getMateIn());
+            else sb.append("cp ").append(info.getScore());
+            return sb.append('\t').append(info.getNodes()).toString();
+        }
+    }
+}
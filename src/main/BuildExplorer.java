@@ -0,0 +1,70 @@
+package main;
+
+import chess.explorer.ExplorerBuilder;
+import chess.explorer.PgnReader;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Builds an opening explorer index from PGN files.
+ * <p>
+ * Usage: {@code BuildExplorer <index> <pgn>... [--plies n] [--threads n]
+ * [--temp directory] [--run-positions n]}
+ *
+ * @author joana
+ */
+public class BuildExplorer {
+
+    /**
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) throws IOException {
+        int plies = 40;
+        int threads = Runtime.getRuntime().availableProcessors();
+        Path temp = Paths.get(System.getProperty("java.io.tmpdir"));
+        int runPositions = ExplorerBuilder.DEFAULT_RUN_POSITIONS;
+        List<String> files = new ArrayList<>();
+        try {
+            for(int i = 0; i < args.length; i++) {
+                switch(args[i]) {
+                    case "--plies": plies = Integer.parseInt(args[++i]); break;
+                    case "--threads": threads = Integer.parseInt(args[++i]); break;
+                    case "--temp": temp = Paths.get(args[++i]); break;
+                    case "--run-positions": runPositions = Integer.parseInt(args[++i]); break;
+                    default: files.add(args[i]);
+                }
+            }
+        } catch(IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.err.println("Invalid options: " + e.getMessage());
+            System.exit(2);
+        }
+        if(files.size() < 2) {
+            System.err.println("Usage: BuildExplorer <index> <pgn>... [--plies n] [--threads n] [--temp directory] [--run-positions n]");
+            System.exit(2);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        ExplorerBuilder builder = new ExplorerBuilder(pool, plies, temp, runPositions);
+        long start = System.nanoTime();
+        try {
+            for(String file : files.subList(1, files.size())) {
+                try(BufferedReader in = Files.newBufferedReader(Paths.get(file), StandardCharsets.ISO_8859_1)) {
+                    builder.add(new PgnReader(in));
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+        builder.write(Paths.get(files.get(0)));
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.err.printf("%d games (%d rejected) in %.1f s, %.0f games/s%n",
+                builder.getGames(), builder.getRejectedGames(), seconds, builder.getGames() / Math.max(seconds, 1e-9));
+    }
+}
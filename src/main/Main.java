@@ -3,13 +3,24 @@ package main;
 import chess.ChessMatch;
 import chess.ChessPiece;
 import chess.ChessPosition;
+import chess.Color;
+import chess.Move;
+import chess.engine.EnginePlayer;
+import chess.explorer.OpeningExplorer;
 import exceptions.ChessException;
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.InputMismatchException;
 import java.util.List;
 import java.util.Scanner;
+import monitoring.ChessMetrics;
 
 /**
+ * Interactive game in the terminal, between two people or against the
+ * engine, which ponders on the expected reply while its opponent thinks.
+ * <p>
+ * Usage: {@code Main [--explorer file] [--engine white|black] [--movetime ms] [--no-ponder]}
  *
  * @author joana
  */
@@ -18,22 +29,55 @@ public class Main {
     /**
      * @param args the command line arguments
      */
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
+        OpeningExplorer explorer = null;
+        Color engineColor = null;
+        long moveTime = 2000;
+        boolean ponder = true;
+        try {
+            for(int i = 0; i < args.length; i++) {
+                switch(args[i]) {
+                    case "--explorer": explorer = OpeningExplorer.open(Paths.get(args[++i])); break;
+                    case "--engine": engineColor = Color.valueOf(args[++i].toUpperCase()); break;
+                    case "--movetime": moveTime = Long.parseLong(args[++i]); break;
+                    case "--no-ponder": ponder = false; break;
+                    default: throw new IllegalArgumentException("Unknown option " + args[i]);
+                }
+            }
+        } catch(IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.err.println("Invalid options: " + e.getMessage());
+            System.exit(2);
+        }
+        if(ChessMetrics.getRegistrationError() != null) System.err.println(ChessMetrics.getRegistrationError());
+        EnginePlayer engine = engineColor != null ? new EnginePlayer(moveTime, ponder) : null;
+        
         Scanner sc = new Scanner(System.in);
         ChessMatch chessMatch = new ChessMatch();
         List<ChessPiece> captured = new ArrayList<>();
+        TerminalRenderer renderer = new TerminalRenderer(System.out, TerminalRenderer.supportsCursorMovement());
 
         while(!chessMatch.isCheckMate()) {
             try {
-                UI.clearScreen();
-                UI.printMatch(chessMatch, captured);
+                renderer.drawMatch(chessMatch, captured);
+                if(explorer != null) UI.printExplorer(explorer, chessMatch);
                 System.out.println();
+                if(chessMatch.getCurrentPlayer() == engineColor) {
+                    System.out.print("Engine is thinking...");
+                    int move = engine.chooseMove(chessMatch);
+                    if(move == Move.NONE) break;
+                    ChessPiece capturedPiece = chessMatch.performChessMove(ChessPosition.of(Move.source(move)), ChessPosition.of(Move.target(move)));
+                    if(capturedPiece != null) 
+                        captured.add(capturedPiece);
+                    String type = Move.promotionType(move);
+                    if(chessMatch.getPromoted() != null && type != null && !type.equals("Q"))
+                        chessMatch.replacePromotedPiece(type);
+                    continue;
+                }
                 System.out.print("Source: ");
                 ChessPosition source = UI.readChessPosition(sc);
 
                 boolean[][] possibleMoves = chessMatch.possibleMoves(source);
-                UI.clearScreen();
-                UI.printBoard(chessMatch.getPieces(), possibleMoves);
+                renderer.drawBoard(chessMatch.getBoardView(), possibleMoves);
                 
                 System.out.println();
                 System.out.print("Target: ");
@@ -62,7 +106,10 @@ public class Main {
             }
         }
         
-        UI.clearScreen();
-        UI.printMatch(chessMatch, captured);
+        renderer.drawMatch(chessMatch, captured);
+        if(engine != null) {
+            System.out.println("Ponder hits: " + engine.getPonderHits() + ", misses: " + engine.getPonderMisses());
+            engine.close();
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,137 @@
+package main;
+
+/**
+ * Results of a match between two engines, counted from the point of view of
+ * the first one, with the Elo difference they imply and a sequential
+ * probability ratio test of whether that difference is at least elo1 rather
+ * than at most elo0. The log-likelihood ratio uses the normal approximation
+ * of the trinomial (win, draw, loss) model.
+ *
+ * @author joana
+ */
+public class MatchStatistics {
+    private final double elo0;
+    private final double elo1;
+    private final double lowerBound;
+    private final double upperBound;
+
+    private int wins;
+    private int draws;
+    private int losses;
+
+    public MatchStatistics(double elo0, double elo1, double alpha, double beta) {
+        this.elo0 = elo0;
+        this.elo1 = elo1;
+        lowerBound = Math.log(beta / (1 - alpha));
+        upperBound = Math.log((1 - beta) / alpha);
+    }
+
+    /**
+     * @param result 1 if the first engine won, 0 for a draw, -1 if it lost
+     */
+    public synchronized void add(int result) {
+        if(result > 0) wins++;
+        else if(result < 0) losses++;
+        else draws++;
+    }
+
+    public synchronized int getWins() {
+        return wins;
+    }
+
+    public synchronized int getDraws() {
+        return draws;
+    }
+
+    public synchronized int getLosses() {
+        return losses;
+    }
+
+    public synchronized int getGames() {
+        return wins + draws + losses;
+    }
+
+    /**
+     * Fraction of the points scored by the first engine.
+     */
+    public synchronized double getScore() {
+        int games = getGames();
+        return games == 0 ? 0.5 : (wins + 0.5 * draws) / games;
+    }
+
+    public synchronized double getElo() {
+        return elo(getScore());
+    }
+
+    /**
+     * Half width of the 95% confidence interval of {@link #getElo()}.
+     */
+    public synchronized double getEloError() {
+        int games = getGames();
+        if(games == 0) return Double.POSITIVE_INFINITY;
+        double score = getScore();
+        double error = 1.96 * Math.sqrt(variance(score) / games);
+        return (elo(score + error) - elo(score - error)) / 2;
+    }
+
+    public synchronized double getLogLikelihoodRatio() {
+        int games = getGames();
+        double score = getScore();
+        double variance = variance(score);
+        if(games == 0 || variance == 0) return 0;
+        double s0 = expectedScore(elo0);
+        double s1 = expectedScore(elo1);
+        return games * (s1 - s0) * (2 * score - s0 - s1) / (2 * variance);
+    }
+
+    public double getLowerBound() {
+        return lowerBound;
+    }
+
+    public double getUpperBound() {
+        return upperBound;
+    }
+
+    /**
+     * True once the test has accepted either hypothesis.
+     */
+    public synchronized boolean isConcluded() {
+        double llr = getLogLikelihoodRatio();
+        return llr <= lowerBound || llr >= upperBound;
+    }
+
+    /**
+     * "H1" if the first engine is found stronger by at least elo1, "H0" if it
+     * is found no stronger than elo0, or null while the test goes on.
+     */
+    public synchronized String getConclusion() {
+        double llr = getLogLikelihoodRatio();
+        if(llr >= upperBound) return "H1";
+        if(llr <= lowerBound) return "H0";
+        return null;
+    }
+
+    // variance of the result of a single game
+    private double variance(double score) {
+        int games = getGames();
+        if(games == 0) return 0;
+        return (wins * (1 - score) * (1 - score) + draws * (0.5 - score) * (0.5 - score)
+                + losses * score * score) / games;
+    }
+
+    private static double expectedScore(double elo) {
+        return 1 / (1 + Math.pow(10, -elo / 400));
+    }
+
+    private static double elo(double score) {
+        if(score <= 0) return Double.NEGATIVE_INFINITY;
+        if(score >= 1) return Double.POSITIVE_INFINITY;
+        return -400 * Math.log10(1 / score - 1);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("W/D/L %d/%d/%d  Elo %.1f +/- %.1f  LLR %.2f [%.2f, %.2f]",
+                wins, draws, losses, getElo(), getEloError(), getLogLikelihoodRatio(), lowerBound, upperBound);
+    }
+}
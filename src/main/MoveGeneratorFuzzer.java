@@ -0,0 +1,308 @@
+package main;
+
+import chess.ChessMatch;
+import chess.ChessPiece;
+import chess.ChessPosition;
+import chess.Move;
+import exceptions.ChessException;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Plays random legal games and checks the move generators of
+ * {@link ChessMatch} against each other and against
+ * {@link ReferenceMoveGenerator}. At every ply the chosen move is played
+ * with {@link ChessMatch#play(int)} and taken back, then with
+ * performChessMove and a random replacePromotedPiece choice, and both must
+ * reach the same position; positions are compared by hash, so this costs
+ * little. The reference follows the game move by move, and every
+ * {@code --check-every} plies, and at the end of every game, it is compared
+ * in full: the placement, the check flag, the int move list used by
+ * engines, the boolean[][] possibleMoves of the interactive game, which
+ * answers from the legal move cache, and the pseudo-legal targets each
+ * piece gives by itself. With {@code --check-every 1} every ply is
+ * compared in full, at about half the speed: most of the time then goes to
+ * the match's own legal move generation, which every ply needs. Random
+ * games last about 275 plies, so one core plays some ten thousand games a
+ * minute, a few million plies. The first divergence is
+ * printed with the seed, the moves from the start and the FEN where it
+ * happened.
+ * <p>
+ * Usage: {@code MoveGeneratorFuzzer [--games n] [--threads n] [--seed n] [--fen fen]
+ * [--check-every n]}
+ *
+ * @author joana
+ */
+public class MoveGeneratorFuzzer {
+    private static final int MAX_PLIES = 300;
+
+    private final String startFen;
+    private final long seed;
+    private final long games;
+    private final int checkEvery;
+    private final AtomicLong nextGame = new AtomicLong();
+    private final AtomicLong plies = new AtomicLong();
+    private volatile String divergence;
+
+    /**
+     * @param checkEvery plies between two full comparisons with the reference
+     */
+    public MoveGeneratorFuzzer(String startFen, long seed, long games, int checkEvery) {
+        this.startFen = startFen;
+        this.seed = seed;
+        this.games = games;
+        this.checkEvery = Math.max(1, checkEvery);
+    }
+
+    /**
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) throws InterruptedException {
+        long games = 10000;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long seed = System.nanoTime();
+        String fen = ChessMatch.START_FEN;
+        int checkEvery = 8;
+        try {
+            for(int i = 0; i < args.length; i++) {
+                switch(args[i]) {
+                    case "--games": games = Long.parseLong(args[++i]); break;
+                    case "--threads": threads = Integer.parseInt(args[++i]); break;
+                    case "--seed": seed = Long.parseLong(args[++i]); break;
+                    case "--fen": fen = args[++i]; break;
+                    case "--check-every": checkEvery = Integer.parseInt(args[++i]); break;
+                    default: throw new IllegalArgumentException("Unknown option " + args[i]);
+                }
+            }
+        } catch(IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.err.println("Invalid options: " + e.getMessage());
+            System.exit(2);
+        }
+
+        MoveGeneratorFuzzer fuzzer = new MoveGeneratorFuzzer(fen, seed, games, checkEvery);
+        long start = System.nanoTime();
+        String divergence = fuzzer.run(threads);
+        double minutes = (System.nanoTime() - start) / 60e9;
+        long played = Math.min(fuzzer.nextGame.get(), games);
+        System.out.printf("%d games, %d plies in %.2f min: %.0f games/min, seed %d%n",
+                played, fuzzer.plies.get(), minutes, played / minutes, seed);
+        if(divergence != null) {
+            System.out.println(divergence);
+            System.exit(1);
+        }
+        System.out.println("No divergence found.");
+    }
+
+    /**
+     * Plays the games on {@code threads} threads and returns the report of
+     * the first divergence, or null if there was none.
+     */
+    public String run(int threads) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        for(int i = 0; i < threads; i++) pool.execute(new Worker());
+        pool.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        return divergence;
+    }
+
+    private class Worker implements Runnable {
+        private final ChessMatch match = new ChessMatch();
+        private final ReferenceMoveGenerator reference = new ReferenceMoveGenerator();
+        private final int[] expected = new int[256];
+        private final int[] actual = new int[256];
+        private final int[] pseudo = new int[256];
+        private final StringBuilder moves = new StringBuilder();
+        private long gameSeed;
+
+        @Override
+        public void run() {
+            long game;
+            while(divergence == null && (game = nextGame.getAndIncrement()) < games) {
+                gameSeed = seed + game;
+                try {
+                    String failure = play(new SplittableRandom(gameSeed));
+                    if(failure != null) report(failure);
+                } catch(RuntimeException e) {
+                    report("Exception: " + e);
+                }
+            }
+        }
+
+        private String play(SplittableRandom random) {
+            match.setPosition(startFen);
+            reference.setPosition(startFen);
+            moves.setLength(0);
+            for(int ply = 0; ply < MAX_PLIES && match.getHalfMoveClock() < 100; ply++) {
+                int count = match.legalMoves(actual);
+                Arrays.sort(actual, 0, count);
+                if(count == 0 || ply % checkEvery == 0) {
+                    String failure = compare(count);
+                    if(failure != null) return failure;
+                }
+                if(count == 0) return null;
+
+                int move = actual[random.nextInt(count)];
+                moves.append(Move.toUci(move)).append(' ');
+
+                long hash = match.getHash();
+                match.play(move);
+                long played = match.getHash();
+                String playedFen = match.isCheck() ? match.toFen() : null;
+                match.takeBack();
+                if(match.getHash() != hash)
+                    return "takeBack of " + Move.toUci(move) + " left " + match.toFen();
+
+                String failure = perform(move, random);
+                if(failure != null) return failure;
+                reference.play(move);
+                if(match.isCheckMate()) {
+                    // the mated side stays to move, so only the placement must agree
+                    if(!placement(match.toFen()).equals(placement(playedFen)))
+                        return "performChessMove reached " + match.toFen() + ", play reached " + playedFen;
+                    if(!reference.isCheck() || reference.legalMoves(expected) != 0)
+                        return "Checkmate after " + Move.toUci(move) + ", reference disagrees";
+                    return null;
+                }
+                if(match.getHash() != played)
+                    return "performChessMove of " + Move.toUci(move) + " reached another position than play";
+                plies.incrementAndGet();
+            }
+            return null;
+        }
+
+        /**
+         * Compares the position with the reference in full, given the
+         * {@code count} sorted legal moves of the match in {@code actual}.
+         */
+        private String compare(int count) {
+            String placement = placement(match.toFen());
+            if(!placement.equals(reference.placement()))
+                return "Placement is " + placement + ", reference has " + reference.placement();
+            if(match.isCheck() != reference.isCheck())
+                return "Check flag is " + match.isCheck() + ", reference says " + reference.isCheck();
+
+            int expectedCount = reference.legalMoves(expected);
+            if(!Arrays.equals(expected, 0, expectedCount, actual, 0, count))
+                return "legalMoves differs: expected " + list(expected, expectedCount) + ", got " + list(actual, count);
+
+            String failure = comparePossibleMoves(count);
+            if(failure != null) return failure;
+            return comparePieceMoves();
+        }
+
+        /**
+         * Checks the boolean[][] each piece of the side to move gives by
+         * itself, without the match, against the reference's pseudo-legal
+         * targets of its square.
+         */
+        private String comparePieceMoves() {
+            int count = reference.pseudoLegalMoves(pseudo);
+            for(int square = 0; square < 64; square++) {
+                ChessPiece piece = match.pieceAt(square);
+                if(piece == null || piece.getColor() != match.getCurrentPlayer()) continue;
+                long expectedTargets = 0;
+                for(int i = 0; i < count; i++) {
+                    if(Move.source(pseudo[i]) == square) expectedTargets |= 1L << Move.target(pseudo[i]);
+                }
+                boolean[][] possible = piece.possibleMoves();
+                long found = 0;
+                for(int target = 0; target < 64; target++) {
+                    if(possible[target >>> 3][target & 7]) found |= 1L << target;
+                }
+                if(found != expectedTargets)
+                    return "ChessPiece.possibleMoves of " + Move.squareName(square) + " differs: expected "
+                            + squares(expectedTargets) + ", got " + squares(found);
+            }
+            return null;
+        }
+
+        private String comparePossibleMoves(int count) {
+            for(int square = 0; square < 64; square++) {
+                ChessPiece piece = match.pieceAt(square);
+                if(piece == null || piece.getColor() != match.getCurrentPlayer()) continue;
+                long targets = 0;
+                for(int i = 0; i < count; i++) {
+                    if(Move.source(actual[i]) == square) targets |= 1L << Move.target(actual[i]);
+                }
+
+                boolean[][] possible;
+                try {
+                    possible = match.possibleMoves(ChessPosition.of(square));
+                } catch(ChessException e) {
+                    if(targets == 0) continue;
+                    return "possibleMoves of " + Move.squareName(square) + " failed: " + e.getMessage();
+                }
+                long found = 0;
+                for(int target = 0; target < 64; target++) {
+                    if(possible[target >>> 3][target & 7]) found |= 1L << target;
+                }
+                if(found != targets)
+                    return "possibleMoves of " + Move.squareName(square) + " differs: expected "
+                            + squares(targets) + ", got " + squares(found);
+            }
+            return null;
+        }
+
+        private String perform(int move, SplittableRandom random) {
+            match.performChessMove(ChessPosition.of(Move.source(move)), ChessPosition.of(Move.target(move)));
+            String type = Move.promotionType(move);
+            if(type == null) {
+                if(match.getPromoted() != null) return "Unexpected promotion after " + Move.toUci(move);
+                return null;
+            }
+            if(match.getPromoted() == null) return "No promotion after " + Move.toUci(move);
+            // an invalid letter must leave the queen in place
+            if(random.nextInt(8) == 0 && match.replacePromotedPiece("X") != match.getPromoted())
+                return "replacePromotedPiece accepted an invalid type";
+            ChessPiece piece = match.replacePromotedPiece(type);
+            if(!piece.toString().equals(type)) return "Promoted to " + piece + " instead of " + type;
+            return null;
+        }
+
+        private void report(String failure) {
+            synchronized(MoveGeneratorFuzzer.this) {
+                if(divergence != null) return;
+                divergence = "Divergence: " + failure
+                        + "\nseed: " + gameSeed
+                        + "\nstart: " + startFen
+                        + "\nmoves: " + moves.toString().trim()
+                        + "\nfen: " + safeFen();
+            }
+        }
+
+        private String safeFen() {
+            try {
+                return match.toFen();
+            } catch(RuntimeException e) {
+                return "unavailable (" + e + ")";
+            }
+        }
+    }
+
+    private static String placement(String fen) {
+        return fen.substring(0, fen.indexOf(' '));
+    }
+
+    private static String list(int[] moves, int count) {
+        StringBuilder sb = new StringBuilder("[");
+        for(int i = 0; i < count; i++) {
+            if(i > 0) sb.append(' ');
+            sb.append(Move.toUci(moves[i]));
+        }
+        return sb.append(']').toString();
+    }
+
+    private static String squares(long bits) {
+        StringBuilder sb = new StringBuilder("[");
+        while(bits != 0) {
+            if(sb.length() > 1) sb.append(' ');
+            sb.append(Move.squareName(Long.numberOfTrailingZeros(bits)));
+            bits &= bits - 1;
+        }
+        return sb.append(']').toString();
+    }
+}
@@ -0,0 +1,143 @@
+package main;
+
+import chess.ChessMatch;
+import chess.Color;
+import chess.engine.Evaluation;
+import chess.engine.Network;
+import chess.engine.NnueEvaluator;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.SplittableRandom;
+
+/**
+ * Times the evaluators on positions from random games: the classical
+ * {@link Evaluation}, a network whose accumulators are refreshed from
+ * scratch for every position, and the same network updated incrementally
+ * by one move, as the search uses it. Each incremental result is checked
+ * against a refresh of the position after the move. Running it again with
+ * {@code -XX:-UseSuperWord} shows what the SIMD code generated by the JIT
+ * is worth on this CPU.
+ * <p>
+ * Usage: {@code NnueBenchmark [--weights file] [--hidden n] [--positions n] [--rounds n] [--seed n]}
+ *
+ * @author joana
+ */
+public class NnueBenchmark {
+    private static final int MAX_PLIES = 120;
+
+    /**
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) throws IOException {
+        String weights = null;
+        int hidden = 256;
+        int positions = 2000;
+        int rounds = 50;
+        long seed = 1;
+        try {
+            for(int i = 0; i < args.length; i++) {
+                switch(args[i]) {
+                    case "--weights": weights = args[++i]; break;
+                    case "--hidden": hidden = Integer.parseInt(args[++i]); break;
+                    case "--positions": positions = Integer.parseInt(args[++i]); break;
+                    case "--rounds": rounds = Integer.parseInt(args[++i]); break;
+                    case "--seed": seed = Long.parseLong(args[++i]); break;
+                    default: throw new IllegalArgumentException("Unknown option " + args[i]);
+                }
+            }
+        } catch(IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.err.println("Invalid options: " + e.getMessage());
+            System.exit(2);
+        }
+
+        Network network = weights != null ? Network.load(Paths.get(weights)) : Network.random(hidden, seed);
+        ChessMatch[] matches = new ChessMatch[positions];
+        int[] moves = new int[positions];
+        randomPositions(matches, moves, new SplittableRandom(seed));
+        NnueEvaluator evaluator = new NnueEvaluator(network, 1);
+        System.out.printf("%d positions, %d hidden neurons%n", positions, network.getHidden());
+
+        int mismatches = check(matches, moves, network);
+        for(int pass = 0; pass < 2; pass++) {
+            // the first pass only warms up the JIT
+            boolean report = pass == 1;
+            long start = System.nanoTime();
+            long sum = 0;
+            for(int r = 0; r < rounds; r++) {
+                for(ChessMatch match : matches) sum += Evaluation.evaluate(match);
+            }
+            if(report) print("classical", start, (long) rounds * positions, sum);
+
+            start = System.nanoTime();
+            sum = 0;
+            for(int r = 0; r < rounds; r++) {
+                for(ChessMatch match : matches) {
+                    evaluator.refresh(match);
+                    sum += evaluator.evaluate(match.getCurrentPlayer());
+                }
+            }
+            if(report) print("network, full refresh", start, (long) rounds * positions, sum);
+
+            long elapsed = 0;
+            sum = 0;
+            for(int i = 0; i < positions; i++) {
+                evaluator.refresh(matches[i]);
+                Color next = matches[i].getCurrentPlayer() == Color.WHITE ? Color.BLACK : Color.WHITE;
+                long t = System.nanoTime();
+                for(int r = 0; r < rounds; r++) {
+                    evaluator.push(matches[i], moves[i]);
+                    sum += evaluator.evaluate(next);
+                    evaluator.pop();
+                }
+                elapsed += System.nanoTime() - t;
+            }
+            if(report) print("network, incremental", System.nanoTime() - elapsed, (long) rounds * positions, sum);
+        }
+        System.out.println(mismatches == 0 ? "Incremental and refreshed evaluations agree."
+                : mismatches + " incremental evaluations differ from a refresh.");
+    }
+
+    /**
+     * Fills the arrays with positions reached by random moves and a legal
+     * move from each.
+     */
+    private static void randomPositions(ChessMatch[] matches, int[] moves, SplittableRandom random) {
+        int[] legal = new int[256];
+        int filled = 0;
+        while(filled < matches.length) {
+            ChessMatch match = new ChessMatch();
+            for(int ply = 0; ply < MAX_PLIES && filled < matches.length; ply++) {
+                int count = match.legalMoves(legal);
+                if(count == 0) break;
+                int move = legal[random.nextInt(count)];
+                if(random.nextInt(4) == 0) {
+                    matches[filled] = new ChessMatch(match.toFen());
+                    moves[filled++] = move;
+                }
+                match.play(move);
+            }
+        }
+    }
+
+    private static int check(ChessMatch[] matches, int[] moves, Network network) {
+        NnueEvaluator incremental = new NnueEvaluator(network, 1);
+        NnueEvaluator refreshed = new NnueEvaluator(network, 0);
+        int mismatches = 0;
+        for(int i = 0; i < matches.length; i++) {
+            incremental.refresh(matches[i]);
+            incremental.push(matches[i], moves[i]);
+            matches[i].play(moves[i]);
+            refreshed.refresh(matches[i]);
+            Color side = matches[i].getCurrentPlayer();
+            if(incremental.evaluate(side) != refreshed.evaluate(side)) mismatches++;
+            matches[i].takeBack();
+        }
+        return mismatches;
+    }
+
+    private static void print(String name, long start, long evaluations, long checksum) {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%-22s %8.0f ns/eval %,12.0f evals/s  (checksum %d)%n",
+                name, seconds * 1e9 / evaluations, evaluations / seconds, checksum);
+    }
+}
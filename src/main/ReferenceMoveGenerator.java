@@ -0,0 +1,285 @@
+package main;
+
+import chess.Move;
+import java.util.Arrays;
+
+/**
+ * A deliberately plain legal move generator that shares no code with the
+ * pieces: it reads a FEN into a char array and walks rows and columns with
+ * bounds checks. It exists only to be compared against {@link chess.ChessMatch}.
+ * After a position is read it can follow a game move by move with
+ * {@link #play(int)}, so the FEN is not read again at every ply.
+ * <p>
+ * The king may not castle out of check or across an attacked square; the
+ * square it lands on is tested like the target of any other king move.
+ *
+ * @author joana
+ */
+class ReferenceMoveGenerator {
+    private static final int[][] KNIGHT = {{-2, -1}, {-2, 1}, {-1, -2}, {-1, 2}, {1, -2}, {1, 2}, {2, -1}, {2, 1}};
+    private static final int[][] KING = {{-1, -1}, {-1, 0}, {-1, 1}, {0, -1}, {0, 1}, {1, -1}, {1, 0}, {1, 1}};
+    private static final int[][] DIAGONAL = {{-1, -1}, {-1, 1}, {1, -1}, {1, 1}};
+    private static final int[][] STRAIGHT = {{-1, 0}, {1, 0}, {0, -1}, {0, 1}};
+
+    private final char[] board = new char[64];
+    private final char[] trial = new char[64];
+    private boolean white;
+    private String castling;
+    private int enPassant;
+
+    private final int[] pseudo = new int[256];
+
+    void setPosition(String fen) {
+        String[] fields = fen.split(" ");
+        Arrays.fill(board, ' ');
+        int square = 0;
+        for(char c : fields[0].toCharArray()) {
+            if(c == '/') continue;
+            if(Character.isDigit(c)) square += c - '0';
+            else board[square++] = c;
+        }
+        white = fields[1].equals("w");
+        castling = fields[2];
+        enPassant = fields[3].equals("-") ? -1 : Move.parseSquare(fields[3]);
+    }
+
+    /**
+     * Plays a move from {@link #legalMoves(int[])}.
+     */
+    void play(int move) {
+        int source = Move.source(move);
+        int target = Move.target(move);
+        char piece = board[source];
+        apply(board, move);
+        castling = withoutRights(withoutRights(castling, source), target);
+        enPassant = Character.toUpperCase(piece) == 'P' && Math.abs(target - source) == 16 ? (source + target) / 2 : -1;
+        white = !white;
+    }
+
+    /**
+     * Castling rights left once a piece leaves or is captured on {@code square}.
+     */
+    private static String withoutRights(String castling, int square) {
+        switch(square) {
+            case 60: return castling.replace("K", "").replace("Q", "");
+            case 4: return castling.replace("k", "").replace("q", "");
+            case 63: return castling.replace("K", "");
+            case 56: return castling.replace("Q", "");
+            case 7: return castling.replace("k", "");
+            case 0: return castling.replace("q", "");
+            default: return castling;
+        }
+    }
+
+    /**
+     * The piece placement field of the FEN of the position.
+     */
+    String placement() {
+        StringBuilder sb = new StringBuilder(72);
+        for(int row = 0; row < 8; row++) {
+            if(row > 0) sb.append('/');
+            int empty = 0;
+            for(int column = 0; column < 8; column++) {
+                char c = board[row * 8 + column];
+                if(c == ' ') {
+                    empty++;
+                    continue;
+                }
+                if(empty > 0) sb.append(empty);
+                empty = 0;
+                sb.append(c);
+            }
+            if(empty > 0) sb.append(empty);
+        }
+        return sb.toString();
+    }
+
+    boolean isCheck() {
+        return attacked(board, king(board, white), !white);
+    }
+
+    /**
+     * Writes the legal moves, sorted, and returns how many there are.
+     */
+    int legalMoves(int[] moves) {
+        int count = 0;
+        int pseudoCount = pseudoMoves();
+        for(int i = 0; i < pseudoCount; i++) {
+            int move = pseudo[i];
+            System.arraycopy(board, 0, trial, 0, 64);
+            apply(trial, move);
+            if(!attacked(trial, king(trial, white), !white)) moves[count++] = move;
+        }
+        Arrays.sort(moves, 0, count);
+        return count;
+    }
+
+    /**
+     * Writes the pseudo-legal moves, which may leave the own king in check,
+     * and returns how many there are.
+     */
+    int pseudoLegalMoves(int[] moves) {
+        int count = pseudoMoves();
+        System.arraycopy(pseudo, 0, moves, 0, count);
+        return count;
+    }
+
+    private int pseudoMoves() {
+        int count = 0;
+        for(int square = 0; square < 64; square++) {
+            char c = board[square];
+            if(c == ' ' || Character.isUpperCase(c) != white) continue;
+            int row = square / 8;
+            int column = square % 8;
+            switch(Character.toUpperCase(c)) {
+                case 'P': count = pawnMoves(square, row, column, count); break;
+                case 'N': count = steps(square, row, column, KNIGHT, count); break;
+                case 'B': count = slides(square, row, column, DIAGONAL, count); break;
+                case 'R': count = slides(square, row, column, STRAIGHT, count); break;
+                case 'Q':
+                    count = slides(square, row, column, DIAGONAL, count);
+                    count = slides(square, row, column, STRAIGHT, count);
+                    break;
+                default:
+                    count = steps(square, row, column, KING, count);
+                    count = castlingMoves(square, count);
+            }
+        }
+        return count;
+    }
+
+    private int pawnMoves(int square, int row, int column, int count) {
+        int direction = white ? -1 : 1;
+        int next = row + direction;
+        if(next < 0 || next > 7) return count;
+        if(board[next * 8 + column] == ' ') {
+            count = pawnMove(square, next * 8 + column, count);
+            int start = white ? 6 : 1;
+            if(row == start && board[(row + 2 * direction) * 8 + column] == ' ')
+                pseudo[count++] = Move.of(square, (row + 2 * direction) * 8 + column);
+        }
+        for(int side = -1; side <= 1; side += 2) {
+            int c = column + side;
+            if(c < 0 || c > 7) continue;
+            int target = next * 8 + c;
+            if(isEnemy(board[target]) || target == enPassant) count = pawnMove(square, target, count);
+        }
+        return count;
+    }
+
+    private int pawnMove(int source, int target, int count) {
+        if(target < 8 || target >= 56) {
+            for(int promotion = Move.PROMOTION_KNIGHT; promotion <= Move.PROMOTION_QUEEN; promotion++) {
+                pseudo[count++] = Move.of(source, target, promotion);
+            }
+        } else pseudo[count++] = Move.of(source, target);
+        return count;
+    }
+
+    private int steps(int square, int row, int column, int[][] directions, int count) {
+        for(int[] d : directions) {
+            int r = row + d[0];
+            int c = column + d[1];
+            if(r < 0 || r > 7 || c < 0 || c > 7) continue;
+            char target = board[r * 8 + c];
+            if(target == ' ' || isEnemy(target)) pseudo[count++] = Move.of(square, r * 8 + c);
+        }
+        return count;
+    }
+
+    private int slides(int square, int row, int column, int[][] directions, int count) {
+        for(int[] d : directions) {
+            int r = row + d[0];
+            int c = column + d[1];
+            while(r >= 0 && r <= 7 && c >= 0 && c <= 7) {
+                char target = board[r * 8 + c];
+                if(target != ' ' && !isEnemy(target)) break;
+                pseudo[count++] = Move.of(square, r * 8 + c);
+                if(target != ' ') break;
+                r += d[0];
+                c += d[1];
+            }
+        }
+        return count;
+    }
+
+    private int castlingMoves(int square, int count) {
+        int home = white ? 60 : 4;
+        if(square != home || isCheck()) return count;
+        if(castling.indexOf(white ? 'K' : 'k') >= 0 && board[home + 1] == ' ' && board[home + 2] == ' '
+                && !attacked(board, home + 1, !white))
+            pseudo[count++] = Move.of(home, home + 2);
+        if(castling.indexOf(white ? 'Q' : 'q') >= 0 && board[home - 1] == ' ' && board[home - 2] == ' ' && board[home - 3] == ' '
+                && !attacked(board, home - 1, !white))
+            pseudo[count++] = Move.of(home, home - 2);
+        return count;
+    }
+
+    private boolean isEnemy(char c) {
+        return c != ' ' && Character.isUpperCase(c) != white;
+    }
+
+    private void apply(char[] b, int move) {
+        int source = Move.source(move);
+        int target = Move.target(move);
+        char piece = b[source];
+        b[source] = ' ';
+        if(Character.toUpperCase(piece) == 'P' && target == enPassant) b[source / 8 * 8 + target % 8] = ' ';
+        if(Character.toUpperCase(piece) == 'K' && Math.abs(target - source) == 2) {
+            int rookSource = target > source ? source + 3 : source - 4;
+            int rookTarget = target > source ? source + 1 : source - 1;
+            b[rookTarget] = b[rookSource];
+            b[rookSource] = ' ';
+        }
+        String type = Move.promotionType(move);
+        if(type != null) piece = white ? type.charAt(0) : Character.toLowerCase(type.charAt(0));
+        b[target] = piece;
+    }
+
+    private static int king(char[] b, boolean white) {
+        char king = white ? 'K' : 'k';
+        for(int square = 0; square < 64; square++) {
+            if(b[square] == king) return square;
+        }
+        throw new IllegalStateException("No king in position");
+    }
+
+    private static boolean attacked(char[] b, int square, boolean byWhite) {
+        int row = square / 8;
+        int column = square % 8;
+        // a white pawn attacks upwards, so it sits one row below the square
+        int pawnRow = byWhite ? row + 1 : row - 1;
+        for(int side = -1; side <= 1; side += 2) {
+            if(pawnRow >= 0 && pawnRow <= 7 && column + side >= 0 && column + side <= 7
+                    && b[pawnRow * 8 + column + side] == (byWhite ? 'P' : 'p')) return true;
+        }
+        if(stepAttack(b, row, column, KNIGHT, byWhite ? 'N' : 'n')) return true;
+        if(stepAttack(b, row, column, KING, byWhite ? 'K' : 'k')) return true;
+        if(rayAttack(b, row, column, DIAGONAL, byWhite ? 'B' : 'b', byWhite ? 'Q' : 'q')) return true;
+        return rayAttack(b, row, column, STRAIGHT, byWhite ? 'R' : 'r', byWhite ? 'Q' : 'q');
+    }
+
+    private static boolean stepAttack(char[] b, int row, int column, int[][] directions, char piece) {
+        for(int[] d : directions) {
+            int r = row + d[0];
+            int c = column + d[1];
+            if(r >= 0 && r <= 7 && c >= 0 && c <= 7 && b[r * 8 + c] == piece) return true;
+        }
+        return false;
+    }
+
+    private static boolean rayAttack(char[] b, int row, int column, int[][] directions, char slider, char queen) {
+        for(int[] d : directions) {
+            int r = row + d[0];
+            int c = column + d[1];
+            while(r >= 0 && r <= 7 && c >= 0 && c <= 7) {
+                char piece = b[r * 8 + c];
+                if(piece == slider || piece == queen) return true;
+                if(piece != ' ') break;
+                r += d[0];
+                c += d[1];
+            }
+        }
+        return false;
+    }
+}
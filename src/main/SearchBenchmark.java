@@ -0,0 +1,100 @@
+package main;
+
+import chess.ChessMatch;
+import chess.Move;
+import chess.engine.Search;
+import chess.engine.SearchInfo;
+import chess.engine.SearchLimits;
+import java.util.Arrays;
+
+/**
+ * Searches a fixed suite of positions to a fixed depth and reports the
+ * nodes, the time to depth and the effective branching factor, the ratio
+ * between the nodes of the last two iterations. Each technique of the
+ * search can be switched off to see what it is worth.
+ * <p>
+ * Usage: {@code SearchBenchmark [--depth n] [--no-pvs] [--no-aspiration]
+ * [--no-null-move] [--no-lmr] [--no-check-extensions] [--plain]}
+ *
+ * @author joana
+ */
+public class SearchBenchmark {
+    private static final String[] POSITIONS = {
+        ChessMatch.START_FEN,
+        "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+        "r1bqkb1r/pppp1ppp/2n2n2/4p3/2B1P3/5N2/PPPP1PPP/RNBQK2R w KQkq - 4 4",
+        "r2q1rk1/pp2bppp/2n1pn2/3p4/2PP4/2N1PN2/PP3PPP/R2QKB1R w KQ - 0 9",
+        "2rq1rk1/pb1nbppp/1p2pn2/2pp4/2PP4/1PNBPN2/PB3PPP/2RQ1RK1 w - - 0 12",
+        "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10",
+        "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+        "8/8/4k3/3p4/3P4/4K3/8/8 w - - 0 1",
+        "8/k7/3p4/p2P1p2/P2P1P2/8/8/K7 w - - 0 1",
+        "r1b2rk1/2q1b1pp/p2ppn2/1p6/3QP3/1BN1B3/PPP3PP/R4RK1 w - - 0 14",
+    };
+
+    /**
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) {
+        int depth = 6;
+        Search search = new Search();
+        try {
+            for(int i = 0; i < args.length; i++) {
+                switch(args[i]) {
+                    case "--depth": depth = Integer.parseInt(args[++i]); break;
+                    case "--no-pvs": search.setPrincipalVariationSearch(false); break;
+                    case "--no-aspiration": search.setAspirationWindows(false); break;
+                    case "--no-null-move": search.setNullMovePruning(false); break;
+                    case "--no-lmr": search.setLateMoveReductions(false); break;
+                    case "--no-check-extensions": search.setCheckExtensions(false); break;
+                    case "--plain":
+                        search.setPrincipalVariationSearch(false);
+                        search.setAspirationWindows(false);
+                        search.setNullMovePruning(false);
+                        search.setLateMoveReductions(false);
+                        search.setCheckExtensions(false);
+                        break;
+                    default: throw new IllegalArgumentException("Unknown option " + args[i]);
+                }
+            }
+        } catch(IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.err.println("Invalid options: " + e.getMessage());
+            System.exit(2);
+        }
+
+        SearchLimits limits = new SearchLimits();
+        limits.setDepth(depth);
+        long[] iterationNodes = new long[depth + 1];
+        search.setListener(info -> {
+            if(info.getMultiPv() == 1) iterationNodes[info.getDepth()] = info.getNodes();
+        });
+
+        long totalNodes = 0;
+        long totalMillis = 0;
+        double logBranching = 0;
+        int measured = 0;
+        for(String fen : POSITIONS) {
+            ChessMatch match = new ChessMatch(fen);
+            Arrays.fill(iterationNodes, 0);
+            SearchInfo info = search.search(match, limits);
+            int last = info.getDepth();
+            double branching = 0;
+            if(last >= 2) {
+                // nodes reported are cumulative over the iterations
+                long previous = iterationNodes[last - 1] - iterationNodes[last - 2];
+                long current = iterationNodes[last] - iterationNodes[last - 1];
+                if(previous > 0) branching = (double) current / previous;
+            }
+            if(branching > 0) {
+                logBranching += Math.log(branching);
+                measured++;
+            }
+            totalNodes += info.getNodes();
+            totalMillis += info.getTimeMillis();
+            System.out.printf("%-72s depth %2d  %-6s %6d cp  %,11d nodes  %7d ms  ebf %5.2f%n",
+                    fen, last, Move.toUci(info.getBestMove()), info.getScore(), info.getNodes(), info.getTimeMillis(), branching);
+        }
+        System.out.printf("total %,d nodes, %d ms, %,d nodes/s, mean ebf %.2f%n", totalNodes, totalMillis,
+                totalNodes * 1000 / Math.max(1, totalMillis), measured > 0 ? Math.exp(logBranching / measured) : 0);
+    }
+}
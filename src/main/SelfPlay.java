@@ -0,0 +1,258 @@
+package main;
+
+import chess.ChessMatch;
+import chess.Color;
+import chess.Move;
+import chess.PieceType;
+import chess.engine.Search;
+import chess.engine.SearchInfo;
+import chess.engine.SearchLimits;
+import exceptions.ChessException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Plays engine A against engine B, many games at once, to measure whether a
+ * change makes the engine stronger. Every opening is played twice with the
+ * colors swapped. Games end on checkmate, stalemate, the fifty-move rule,
+ * threefold repetition or insufficient material, or are adjudicated when
+ * the side to move keeps reporting a lost position or both sides agree the
+ * game is dead even. The run stops early when the SPRT concludes.
+ * <p>
+ * An opening is a FEN, or UCI moves played from the initial position.
+ * <p>
+ * Usage: {@code SelfPlay [--games n] [--threads n] [--openings file]
+ * [--nodes n] [--depth n] [--movetime ms] [--a-nodes n] [--b-nodes n]
+ * [--a-depth n] [--b-depth n] [--elo0 e] [--elo1 e]}
+ *
+ * @author joana
+ */
+public class SelfPlay {
+    private static final String[] DEFAULT_OPENINGS = {
+        "e2e4 e7e5 g1f3 b8c6 f1b5",
+        "e2e4 c7c5 g1f3 d7d6 d2d4",
+        "e2e4 e7e6 d2d4 d7d5",
+        "e2e4 c7c6 d2d4 d7d5",
+        "d2d4 d7d5 c2c4 e7e6",
+        "d2d4 g8f6 c2c4 g7g6 b1c3",
+        "c2c4 e7e5 b1c3 g8f6",
+        "g1f3 d7d5 g2g3 g8f6 f1g2",
+    };
+
+    private static final int MAX_PLIES = 400;
+    private static final int RESIGN_SCORE = 600;
+    private static final int RESIGN_MOVES = 3;
+    private static final int DRAW_SCORE = 10;
+    private static final int DRAW_PLIES = 8;
+    private static final int DRAW_MIN_PLY = 80;
+    // result of play() when the opening could not be set up and no game was played
+    private static final int NO_GAME = Integer.MIN_VALUE;
+
+    private final List<String> openings;
+    private final SearchLimits[] limits;
+    private final int games;
+    private final MatchStatistics statistics;
+    private final AtomicInteger nextGame = new AtomicInteger();
+
+    /**
+     * @param limits search limits of engine A and engine B
+     */
+    public SelfPlay(List<String> openings, SearchLimits[] limits, int games, MatchStatistics statistics) {
+        this.openings = openings;
+        this.limits = limits;
+        this.games = games;
+        this.statistics = statistics;
+    }
+
+    /**
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int games = 1000;
+        int threads = Runtime.getRuntime().availableProcessors();
+        List<String> openings = Arrays.asList(DEFAULT_OPENINGS);
+        SearchLimits a = new SearchLimits();
+        SearchLimits b = new SearchLimits();
+        double elo0 = 0;
+        double elo1 = 10;
+        try {
+            for(int i = 0; i < args.length; i++) {
+                switch(args[i]) {
+                    case "--games": games = Integer.parseInt(args[++i]); break;
+                    case "--threads": threads = Integer.parseInt(args[++i]); break;
+                    case "--openings": openings = readOpenings(args[++i]); break;
+                    case "--nodes": a.setNodes(Long.parseLong(args[++i])); b.setNodes(a.getNodes()); break;
+                    case "--depth": a.setDepth(Integer.parseInt(args[++i])); b.setDepth(a.getDepth()); break;
+                    case "--movetime": a.setMoveTime(Long.parseLong(args[++i])); b.setMoveTime(a.getMoveTime()); break;
+                    case "--a-nodes": a.setNodes(Long.parseLong(args[++i])); break;
+                    case "--b-nodes": b.setNodes(Long.parseLong(args[++i])); break;
+                    case "--a-depth": a.setDepth(Integer.parseInt(args[++i])); break;
+                    case "--b-depth": b.setDepth(Integer.parseInt(args[++i])); break;
+                    case "--elo0": elo0 = Double.parseDouble(args[++i]); break;
+                    case "--elo1": elo1 = Double.parseDouble(args[++i]); break;
+                    default: throw new IllegalArgumentException("Unknown option " + args[i]);
+                }
+            }
+        } catch(IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.err.println("Invalid options: " + e.getMessage());
+            System.exit(2);
+        }
+        for(SearchLimits limits : new SearchLimits[] {a, b}) {
+            if(limits.getDepth() == 0 && limits.getNodes() == 0 && limits.getMoveTime() == 0) limits.setNodes(5000);
+        }
+
+        MatchStatistics statistics = new MatchStatistics(elo0, elo1, 0.05, 0.05);
+        SelfPlay selfPlay = new SelfPlay(openings, new SearchLimits[] {a, b}, games, statistics);
+        long start = System.nanoTime();
+        selfPlay.run(threads);
+        double minutes = (System.nanoTime() - start) / 60e9;
+
+        System.out.println(statistics);
+        String conclusion = statistics.getConclusion();
+        System.out.println("SPRT: " + (conclusion == null ? "inconclusive" : conclusion + " accepted"));
+        System.out.printf("%.1f games/min (%d games in %.1f min on %d threads)%n",
+                statistics.getGames() / minutes, statistics.getGames(), minutes, threads);
+    }
+
+    /**
+     * Reads one opening per line and sets each one up once, so that a broken
+     * line stops the run before any game is played.
+     */
+    private static List<String> readOpenings(String file) throws IOException {
+        List<String> openings = new ArrayList<>();
+        ChessMatch match = new ChessMatch();
+        int[] moves = new int[256];
+        int number = 0;
+        for(String line : Files.readAllLines(Paths.get(file), StandardCharsets.UTF_8)) {
+            number++;
+            if(line.trim().isEmpty()) continue;
+            try {
+                setOpening(match, line.trim(), moves);
+            } catch(ChessException e) {
+                throw new IllegalArgumentException("Invalid opening on line " + number + " of " + file + ": " + e.getMessage());
+            }
+            openings.add(line.trim());
+        }
+        if(openings.isEmpty()) throw new IllegalArgumentException("No openings in " + file);
+        return openings;
+    }
+
+    /**
+     * Sets up an opening, a FEN or UCI moves from the start position.
+     *
+     * @param moves scratch space for the legal moves
+     */
+    private static void setOpening(ChessMatch match, String opening, int[] moves) {
+        if(opening.indexOf('/') >= 0) {
+            match.setPosition(opening);
+            return;
+        }
+        match.setPosition(ChessMatch.START_FEN);
+        for(String uci : opening.split("\\s+")) {
+            int move = Move.fromUci(uci);
+            int count = match.legalMoves(moves);
+            boolean legal = false;
+            for(int i = 0; i < count && !legal; i++) legal = moves[i] == move;
+            if(!legal) throw new ChessException(ChessException.Reason.INVALID_MOVE, "Illegal move " + uci);
+            match.play(move);
+        }
+    }
+
+    /**
+     * Plays games on {@code threads} threads until all were played or the
+     * SPRT concluded. Games already running when it concludes are finished.
+     */
+    public void run(int threads) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        for(int i = 0; i < threads; i++) pool.execute(new Worker());
+        pool.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+    }
+
+    private class Worker implements Runnable {
+        private final ChessMatch match = new ChessMatch();
+        private final Search[] engines = {new Search(), new Search()};
+        private final int[] moves = new int[256];
+        private final Map<String, Integer> positions = new HashMap<>();
+
+        @Override
+        public void run() {
+            int game;
+            while((game = nextGame.getAndIncrement()) < games && !statistics.isConcluded()) {
+                int result = play(openings.get(game / 2 % openings.size()), game % 2 == 0);
+                if(result == NO_GAME) continue;
+                statistics.add(result);
+                int played = statistics.getGames();
+                if(played % 50 == 0) System.out.println(played + " games: " + statistics);
+            }
+        }
+
+        /**
+         * Plays one game and returns 1 if A won, 0 for a draw and -1 if B won,
+         * or {@link #NO_GAME} if the opening could not be set up.
+         */
+        private int play(String opening, boolean aIsWhite) {
+            try {
+                setOpening(match, opening, moves);
+            } catch(ChessException e) {
+                System.err.println("Skipping opening " + opening + ": " + e.getMessage());
+                return NO_GAME;
+            }
+            positions.clear();
+            // each game starts from fresh engines, whatever this thread played before
+            for(Search engine : engines) engine.clear();
+            int[] losingMoves = new int[2];
+            int quietPlies = 0;
+
+            for(int ply = 0; ply < MAX_PLIES; ply++) {
+                Color mover = match.getCurrentPlayer();
+                int aSign = (mover == Color.WHITE) == aIsWhite ? 1 : -1;
+                if(match.legalMoves(moves) == 0) return match.isCheck() ? -aSign : 0;
+                if(match.getHalfMoveClock() >= 100 || insufficientMaterial() || repeatedThreeTimes()) return 0;
+
+                SearchInfo info = engines[aSign > 0 ? 0 : 1].search(match, limits[aSign > 0 ? 0 : 1]);
+                int score = info.getScore();
+                int side = mover.ordinal();
+                losingMoves[side] = score <= -RESIGN_SCORE ? losingMoves[side] + 1 : 0;
+                if(losingMoves[side] >= RESIGN_MOVES) return -aSign;
+                quietPlies = Math.abs(score) <= DRAW_SCORE ? quietPlies + 1 : 0;
+                if(ply >= DRAW_MIN_PLY && quietPlies >= DRAW_PLIES) return 0;
+
+                match.play(info.getBestMove());
+            }
+            return 0;
+        }
+
+        private boolean repeatedThreeTimes() {
+            // placement, side to move, castling and en passant, without the move counters
+            String fen = match.toFen();
+            int end = fen.length();
+            for(int i = 0; i < 2; i++) end = fen.lastIndexOf(' ', end - 1);
+            return positions.merge(fen.substring(0, end), 1, Integer::sum) >= 3;
+        }
+
+        /**
+         * No pawns or major pieces and at most one minor piece per side. A
+         * minor against a minor can still mate, but never by force.
+         */
+        private boolean insufficientMaterial() {
+            for(Color color : Color.values()) {
+                if(match.getPieceCount(color, PieceType.PAWN) > 0 || match.getPieceCount(color, PieceType.ROOK) > 0
+                        || match.getPieceCount(color, PieceType.QUEEN) > 0) return false;
+                if(match.getPieceCount(color, PieceType.KNIGHT) + match.getPieceCount(color, PieceType.BISHOP) > 1) return false;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package main;
+
+import chess.BoardView;
+import chess.ChessMatch;
+import chess.ChessPiece;
+import chess.Color;
+import java.io.PrintStream;
+import java.util.List;
+
+/**
+ * Draws the board for the interactive game. Each frame is built in a reused
+ * buffer and written with a single call. On terminals that understand cursor
+ * positioning only the squares that changed since the previous frame are
+ * repainted, instead of clearing and redrawing the whole screen.
+ *
+ * @author joana
+ */
+public class TerminalRenderer {
+    private static final int SIZE = 8;
+    // screen line (1-based) of the first text line below the board and its labels
+    private static final int STATUS_LINE = SIZE + 2;
+
+    private final PrintStream out;
+    private final boolean incremental;
+    private final StringBuilder frame = new StringBuilder(2048);
+    private final StringBuilder status = new StringBuilder(512);
+    private byte[] bytes = new byte[2048];
+    private final int[] shown = new int[SIZE * SIZE];
+    private boolean hasFrame;
+
+    public TerminalRenderer(PrintStream out, boolean incremental) {
+        this.out = out;
+        this.incremental = incremental;
+    }
+
+    /**
+     * Cursor movement is only used on an interactive terminal that is not
+     * declared dumb; redirected output gets full frames.
+     */
+    public static boolean supportsCursorMovement() {
+        String term = System.getenv("TERM");
+        return System.console() != null && term != null && !term.equals("dumb");
+    }
+
+    public void drawMatch(ChessMatch chessMatch, List<ChessPiece> captured) {
+        status.setLength(0);
+        UI.appendMatchStatus(status, chessMatch, captured);
+        draw(chessMatch.getBoardView(), null, UI.threatened(chessMatch));
+    }
+
+    public void drawBoard(BoardView board, boolean[][] possibleMoves) {
+        status.setLength(0);
+        draw(board, possibleMoves, 0L);
+    }
+
+    private void draw(BoardView board, boolean[][] possibleMoves, long threatened) {
+        frame.setLength(0);
+        if(incremental && hasFrame) {
+            for(int i = 0; i < SIZE; i++) {
+                for(int j = 0; j < SIZE; j++) {
+                    boolean highlight = possibleMoves != null && possibleMoves[i][j];
+                    boolean threat = (threatened & 1L << (i * SIZE + j)) != 0;
+                    int key = key(board.piece(i, j), highlight, threat);
+                    if(shown[i * SIZE + j] == key) continue;
+                    shown[i * SIZE + j] = key;
+                    frame.append("\033[").append(i + 1).append(';').append(3 + 2 * j).append('H');
+                    if(threat) frame.append(UI.ANSI_RED_BACKGROUND);
+                    UI.appendPiece(frame, board.piece(i, j), highlight);
+                }
+            }
+            frame.append("\033[").append(STATUS_LINE).append(";1H");
+        } else {
+            frame.append("\033[H\033[2J");
+            UI.appendBoard(frame, board, possibleMoves, threatened);
+            for(int i = 0; i < SIZE; i++) {
+                for(int j = 0; j < SIZE; j++) {
+                    shown[i * SIZE + j] = key(board.piece(i, j), possibleMoves != null && possibleMoves[i][j],
+                            (threatened & 1L << (i * SIZE + j)) != 0);
+                }
+            }
+            hasFrame = true;
+        }
+
+        // status lines differ in length, so each one clears whatever was left on its line
+        for(int i = 0; i < status.length(); i++) {
+            char c = status.charAt(i);
+            if(c == '\n') frame.append("\033[K");
+            frame.append(c);
+        }
+        // erases the prompt, input and messages printed after the previous frame
+        frame.append("\033[J");
+        write();
+    }
+
+    private static int key(ChessPiece piece, boolean highlight, boolean threat) {
+        int key = (highlight ? 1 : 0) | (threat ? 4 : 0);
+        if(piece != null) key |= piece.toString().charAt(0) << 3 | (piece.getColor() == Color.WHITE ? 2 : 0);
+        return key;
+    }
+
+    private void write() {
+        int length = frame.length();
+        if(bytes.length < length) bytes = new byte[Math.max(length, bytes.length * 2)];
+        for(int i = 0; i < length; i++) {
+            char c = frame.charAt(i);
+            if(c > 127) {
+                out.print(frame);
+                out.flush();
+                return;
+            }
+            bytes[i] = (byte) c;
+        }
+        out.write(bytes, 0, length);
+        out.flush();
+    }
+}
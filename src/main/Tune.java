@@ -0,0 +1,78 @@
+package main;
+
+import chess.engine.EvaluationTuner;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Tunes the piece values and piece-square tables of the evaluation on a
+ * file of positions labelled with game results, one FEN and result per
+ * line, and writes the tuned constants to the output file. Unless K is
+ * given, it is first fitted to the current evaluation.
+ * <p>
+ * Usage: {@code Tune <input> <output> [--epochs n] [--rate x] [--k x] [--threads n]}
+ *
+ * @author joana
+ */
+public class Tune {
+    /**
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) throws IOException {
+        if(args.length < 2) {
+            System.err.println("Usage: Tune <input> <output> [--epochs n] [--rate x] [--k x] [--threads n]");
+            System.exit(2);
+        }
+        int epochs = 200;
+        double rate = 1;
+        double k = 0;
+        int threads = Runtime.getRuntime().availableProcessors();
+        try {
+            for(int i = 2; i < args.length; i++) {
+                switch(args[i]) {
+                    case "--epochs": epochs = Integer.parseInt(args[++i]); break;
+                    case "--rate": rate = Double.parseDouble(args[++i]); break;
+                    case "--k": k = Double.parseDouble(args[++i]); break;
+                    case "--threads": threads = Integer.parseInt(args[++i]); break;
+                    default: throw new IllegalArgumentException("Unknown option " + args[i]);
+                }
+            }
+        } catch(IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.err.println("Invalid options: " + e.getMessage());
+            System.exit(2);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            EvaluationTuner tuner = new EvaluationTuner(pool);
+            long start = System.nanoTime();
+            try(BufferedReader in = Files.newBufferedReader(Paths.get(args[0]), StandardCharsets.UTF_8)) {
+                tuner.load(in);
+            }
+            System.err.printf("%d positions loaded in %.1f s, %d lines skipped%n",
+                    tuner.size(), (System.nanoTime() - start) / 1e9, tuner.getSkipped());
+            if(tuner.size() == 0) System.exit(1);
+
+            if(k > 0) tuner.setScaling(k);
+            else System.err.printf("K = %.4f%n", tuner.fitScaling(0.1, 4));
+            System.err.printf("initial error %.6f%n", tuner.error());
+            for(int epoch = 1; epoch <= epochs; epoch++) {
+                long t = System.nanoTime();
+                double error = tuner.epoch(rate);
+                System.err.printf("epoch %d: error %.6f, %.2f s%n", epoch, error, (System.nanoTime() - t) / 1e9);
+            }
+            System.err.printf("final error %.6f%n", tuner.error());
+
+            try(BufferedWriter out = Files.newBufferedWriter(Paths.get(args[1]), StandardCharsets.UTF_8)) {
+                tuner.write(out);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package main;
 
+import chess.BoardView;
 import chess.ChessMatch;
 import java.util.InputMismatchException;
 import java.util.Scanner;
@@ -7,6 +8,8 @@ import java.util.Scanner;
 import chess.ChessPiece;
 import chess.ChessPosition;
 import chess.Color;
+import chess.Move;
+import chess.explorer.OpeningExplorer;
 import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -48,71 +51,124 @@ public class UI {
     }
 
     public static void printMatch(ChessMatch chessMatch, List<ChessPiece> captured){
-        printBoard(chessMatch.getPieces());
-        System.out.println();
-        printCapturedPieces(captured);
-        System.out.println();
-        System.out.println("Turn: " + chessMatch.getTurn());
-        
-        if(!chessMatch.isCheckMate()){
-            System.out.println("Waiting player: " + chessMatch.getCurrentPlayer().getDescription());
-            if(chessMatch.isCheck()) {
-                System.out.println("CHECK!");
-            }   
-        } else {
-            System.out.println("CHECKMATE!");
-            System.out.println("Winner: " + chessMatch.getCurrentPlayer().getDescription());
-        }           
+        StringBuilder sb = new StringBuilder(512);
+        appendBoard(sb, chessMatch.getBoardView(), null, threatened(chessMatch));
+        appendMatchStatus(sb, chessMatch, captured);
+        System.out.print(sb);
+    }
+    
+    public static void printBoard(BoardView board) {
+        StringBuilder sb = new StringBuilder(512);
+        appendBoard(sb, board, null);
+        System.out.print(sb);
     }
     
-    public static void printBoard(ChessPiece[][] pieces) {
-        for(int i = 0; i < pieces.length; i++) {
-            System.out.print((8 - i) + " ");
-            for(int j = 0; j < pieces.length; j++) {
-                printPiece(pieces[i][j], false);
+    public static void printBoard(BoardView board, boolean[][] possibleMoves) {
+        StringBuilder sb = new StringBuilder(512);
+        appendBoard(sb, board, possibleMoves);
+        System.out.print(sb);
+    }
+    
+    static void appendBoard(StringBuilder sb, BoardView board, boolean[][] possibleMoves) {
+        appendBoard(sb, board, possibleMoves, 0L);
+    }
+    
+    /**
+     * @param threatened squares, numbered as in {@link chess.Move}, shown on a red background
+     */
+    static void appendBoard(StringBuilder sb, BoardView board, boolean[][] possibleMoves, long threatened) {
+        for(int i = 0; i < board.getRows(); i++) {
+            sb.append(8 - i).append(' ');
+            for(int j = 0; j < board.getColumns(); j++) {
+                if((threatened & 1L << (i * 8 + j)) != 0) sb.append(ANSI_RED_BACKGROUND);
+                appendPiece(sb, board.piece(i, j), possibleMoves != null && possibleMoves[i][j]);
+                sb.append(' ');
             }
-            System.out.println();
+            sb.append('\n');
         }
-        System.out.println("  a b c d e f g h");
+        sb.append("  a b c d e f g h\n");
     }
     
-    public static void printBoard(ChessPiece[][] pieces, boolean[][] possibleMoves) {
-        for(int i = 0; i < pieces.length; i++) {
-            System.out.print((8 - i) + " ");
-            for(int j = 0; j < pieces.length; j++) {
-                printPiece(pieces[i][j], possibleMoves[i][j]);
-            }
-            System.out.println();
+    /**
+     * Squares of the player to move's pieces that the opponent attacks.
+     */
+    static long threatened(ChessMatch chessMatch) {
+        if(chessMatch.isCheckMate()) return 0L;
+        Color player = chessMatch.getCurrentPlayer();
+        Color opponent = player == Color.WHITE ? Color.BLACK : Color.WHITE;
+        long own = 0L;
+        BoardView board = chessMatch.getBoardView();
+        for(int square = 0; square < 64; square++) {
+            ChessPiece piece = board.piece(square >>> 3, square & 7);
+            if(piece != null && piece.getColor() == player) own |= 1L << square;
         }
-        System.out.println("  a b c d e f g h");
+        return own & chessMatch.getAttackedSquares(opponent);
     }
     
-    private static void printPiece(ChessPiece piece, boolean background) {
-        if(background) System.out.print(ANSI_BLUE_BACKGROUND);        
-        if(piece == null) System.out.print("-" + ANSI_RESET);
+    static void appendPiece(StringBuilder sb, ChessPiece piece, boolean background) {
+        if(background) sb.append(ANSI_BLUE_BACKGROUND);
+        if(piece == null) sb.append('-').append(ANSI_RESET);
         else {
             if(piece.getColor() == Color.WHITE) 
-                System.out.print(ANSI_WHITE + piece + ANSI_RESET);
+                sb.append(ANSI_WHITE).append(piece).append(ANSI_RESET);
             else 
-                System.out.print(ANSI_YELLOW + piece + ANSI_RESET);
+                sb.append(ANSI_YELLOW).append(piece).append(ANSI_RESET);
         }
-        System.out.print(" ");
     }
     
-    private static void printCapturedPieces(List<ChessPiece> captured){
+    /**
+     * Everything printMatch shows below the board, one line per row.
+     */
+    static void appendMatchStatus(StringBuilder sb, ChessMatch chessMatch, List<ChessPiece> captured) {
+        sb.append('\n');
+        appendCapturedPieces(sb, captured);
+        sb.append('\n');
+        sb.append("Turn: ").append(chessMatch.getTurn()).append('\n');
+        
+        if(!chessMatch.isCheckMate()){
+            sb.append("Waiting player: ").append(chessMatch.getCurrentPlayer().getDescription()).append('\n');
+            if(chessMatch.isCheck()) {
+                sb.append("CHECK!\n");
+            }   
+        } else {
+            sb.append("CHECKMATE!\n");
+            sb.append("Winner: ").append(chessMatch.getCurrentPlayer().getDescription()).append('\n');
+        }           
+    }
+    
+    /**
+     * Games reaching the current position in the explorer index and the
+     * most played continuations.
+     */
+    public static void printExplorer(OpeningExplorer explorer, ChessMatch chessMatch) {
+        int entry = explorer.find(chessMatch);
+        if(entry < 0) {
+            System.out.println("Explorer: position not found");
+            return;
+        }
+        int games = explorer.getGames(entry);
+        StringBuilder sb = new StringBuilder(256);
+        sb.append("Explorer: ").append(games).append(" games, white ").append(percent(explorer.getWhiteWins(entry), games))
+                .append(" draw ").append(percent(explorer.getDraws(entry), games))
+                .append(" black ").append(percent(explorer.getBlackWins(entry), games)).append('\n');
+        for(int i = 0; i < Math.min(5, explorer.getMoveCount(entry)); i++) {
+            int count = explorer.getMoveGames(entry, i);
+            sb.append("  ").append(Move.toUci(explorer.getMove(entry, i))).append(' ').append(count)
+                    .append(" (").append(percent(count, games)).append(")\n");
+        }
+        System.out.print(sb);
+    }
+    
+    private static String percent(int count, int total) {
+        return (total == 0 ? 0 : count * 100 / total) + "%";
+    }
+    
+    private static void appendCapturedPieces(StringBuilder sb, List<ChessPiece> captured){
         List<ChessPiece> white = captured.stream().filter(x -> x.getColor() == Color.WHITE).collect(Collectors.toList());
         List<ChessPiece> black = captured.stream().filter(x -> x.getColor() == Color.BLACK).collect(Collectors.toList());
         
-        System.out.println("Captured pieces:");
-        System.out.print("White: ");
-        System.out.print(ANSI_WHITE);
-        System.out.println(Arrays.toString(white.toArray()));
-        System.out.print(ANSI_RESET);
-        
-        System.out.print("Black: ");
-        System.out.print(ANSI_YELLOW);
-        System.out.println(Arrays.toString(black.toArray()));
-        System.out.print(ANSI_RESET);
-        
+        sb.append("Captured pieces:\n");
+        sb.append("White: ").append(ANSI_WHITE).append(Arrays.toString(white.toArray())).append('\n').append(ANSI_RESET);
+        sb.append("Black: ").append(ANSI_YELLOW).append(Arrays.toString(black.toArray())).append('\n').append(ANSI_RESET);
     }
 }
\ No newline at end of file
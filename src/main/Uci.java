@@ -0,0 +1,341 @@
+package main;
+
+import chess.ChessMatch;
+import chess.Move;
+import chess.engine.MateResult;
+import chess.engine.MateSolver;
+import chess.engine.Network;
+import chess.engine.Search;
+import chess.engine.SearchInfo;
+import chess.engine.SearchLimits;
+import chess.engine.TimeManager;
+import exceptions.ChessException;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import monitoring.ChessMetrics;
+
+/**
+ * Universal Chess Interface front end, so the engine can be driven by chess
+ * GUIs and tournament managers. Commands are read on the calling thread while
+ * searches run on a separate one, so stop and isready are answered at once.
+ *
+ * @author joana
+ */
+public class Uci {
+    private final PrintStream out;
+    private final Search search = new Search();
+    private final ExecutorService searchThread = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "uci-search");
+        t.setDaemon(true);
+        return t;
+    });
+    private Future<?> running;
+    // go infinite holds its bestmove until stop releases it, even when the search ends first
+    private volatile CountDownLatch infiniteRelease;
+    private volatile boolean holdingBestMove;
+    // allocated by the first go mate, its table is large
+    private volatile MateSolver mateSolver;
+
+    private ChessMatch chessMatch = new ChessMatch();
+    private String basePosition = ChessMatch.START_FEN;
+    private final List<String> appliedMoves = new ArrayList<>();
+    private final int[] legalMoves = new int[256];
+    private int multiPv = 1;
+
+    public Uci(PrintStream out) {
+        this.out = out;
+        search.setListener(this::printInfo);
+    }
+
+    /**
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) throws IOException {
+        // standard output belongs to the protocol
+        if(ChessMetrics.getRegistrationError() != null) System.err.println(ChessMetrics.getRegistrationError());
+        new Uci(System.out).run(new BufferedReader(new InputStreamReader(System.in)));
+    }
+
+    public void run(BufferedReader in) throws IOException {
+        String line;
+        while((line = in.readLine()) != null) {
+            if(!handle(line.trim())) break;
+        }
+        stopSearch();
+        searchThread.shutdown();
+    }
+
+    private boolean handle(String line) {
+        if(line.isEmpty()) return true;
+        String[] tokens = line.split("\\s+");
+        switch(tokens[0]) {
+            case "uci":
+                out.println("id name Chess");
+                out.println("id author joana");
+                out.println("option name MultiPV type spin default 1 min 1 max 64");
+                out.println("option name Move Overhead type spin default " + TimeManager.DEFAULT_MOVE_OVERHEAD + " min 0 max 5000");
+                out.println("option name EvalFile type string default <empty>");
+                out.println("uciok");
+                break;
+            case "isready":
+                out.println("readyok");
+                break;
+            case "setoption":
+                waitForSearch();
+                setOption(tokens);
+                break;
+            case "ucinewgame":
+                waitForSearch();
+                chessMatch = new ChessMatch();
+                basePosition = ChessMatch.START_FEN;
+                appliedMoves.clear();
+                search.clear();
+                break;
+            case "position":
+                waitForSearch();
+                setPosition(tokens);
+                break;
+            case "go":
+                waitForSearch();
+                go(tokens);
+                break;
+            case "stop":
+                stopSearch();
+                break;
+            case "quit":
+                return false;
+            default:
+                out.println("info string unknown command " + tokens[0]);
+        }
+        return true;
+    }
+
+    /**
+     * Moves already on the board are kept when the new command only extends the
+     * previous move list, which is what GUIs send during a game.
+     */
+    private void setPosition(String[] tokens) {
+        int i = 1;
+        String base;
+        if(tokens.length > 1 && tokens[1].equals("startpos")) {
+            base = ChessMatch.START_FEN;
+            i = 2;
+        } else if(tokens.length > 1 && tokens[1].equals("fen")) {
+            int end = 2;
+            while(end < tokens.length && !tokens[end].equals("moves")) end++;
+            base = String.join(" ", Arrays.copyOfRange(tokens, 2, end));
+            i = end;
+        } else {
+            out.println("info string invalid position command");
+            return;
+        }
+
+        List<String> moves = new ArrayList<>();
+        if(i < tokens.length && tokens[i].equals("moves")) {
+            moves.addAll(Arrays.asList(tokens).subList(i + 1, tokens.length));
+        }
+
+        boolean extendsCurrent = base.equals(basePosition)
+                && moves.size() >= appliedMoves.size()
+                && moves.subList(0, appliedMoves.size()).equals(appliedMoves);
+        if(!extendsCurrent) {
+            try {
+                chessMatch = new ChessMatch(base);
+                basePosition = base;
+            } catch(ChessException e) {
+                out.println("info string " + e.getMessage());
+                chessMatch = new ChessMatch();
+                basePosition = ChessMatch.START_FEN;
+            }
+            appliedMoves.clear();
+        }
+
+        for(int j = appliedMoves.size(); j < moves.size(); j++) {
+            if(!applyMove(moves.get(j))) {
+                out.println("info string illegal move " + moves.get(j));
+                break;
+            }
+            appliedMoves.add(moves.get(j));
+        }
+    }
+
+    private boolean applyMove(String uci) {
+        int move;
+        try {
+            move = Move.fromUci(uci);
+        } catch(ChessException e) {
+            return false;
+        }
+        int count = chessMatch.legalMoves(legalMoves);
+        for(int i = 0; i < count; i++) {
+            if(legalMoves[i] == move) {
+                chessMatch.play(move);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void setOption(String[] tokens) {
+        // setoption name <id> [value <x>], where both may contain spaces
+        int value = Arrays.asList(tokens).indexOf("value");
+        if(tokens.length < 3 || !tokens[1].equals("name")) return;
+        String name = String.join(" ", Arrays.copyOfRange(tokens, 2, value < 0 ? tokens.length : value));
+        if(value < 0 || value + 1 >= tokens.length) {
+            out.println("info string missing value for option " + name);
+            return;
+        }
+        try {
+            if(name.equalsIgnoreCase("MultiPV"))
+                multiPv = Math.max(1, Math.min(64, Integer.parseInt(tokens[value + 1])));
+            else if(name.equalsIgnoreCase("Move Overhead"))
+                search.getTimeManager().setMoveOverhead(Long.parseLong(tokens[value + 1]));
+            else if(name.equalsIgnoreCase("EvalFile"))
+                loadNetwork(String.join(" ", Arrays.copyOfRange(tokens, value + 1, tokens.length)));
+            else out.println("info string unknown option " + name);
+        } catch(NumberFormatException e) {
+            out.println("info string invalid value for option " + name);
+        }
+    }
+
+    private void loadNetwork(String file) {
+        if(file.equals("<empty>")) {
+            search.setNetwork(null);
+            return;
+        }
+        try {
+            Network network = Network.load(Paths.get(file));
+            search.setNetwork(network);
+            out.println("info string loaded network " + file + " with " + network.getHidden() + " hidden neurons");
+        } catch(IOException e) {
+            out.println("info string could not load network: " + e.getMessage());
+        }
+    }
+
+    private void go(String[] tokens) {
+        SearchLimits limits = new SearchLimits();
+        limits.setMultiPv(multiPv);
+        int mate = 0;
+        try {
+            for(int i = 1; i < tokens.length; i++) {
+                switch(tokens[i]) {
+                    case "depth": limits.setDepth(Integer.parseInt(tokens[++i])); break;
+                    case "nodes": limits.setNodes(Long.parseLong(tokens[++i])); break;
+                    case "movetime": limits.setMoveTime(Long.parseLong(tokens[++i])); break;
+                    case "wtime": limits.setWhiteTime(Long.parseLong(tokens[++i])); break;
+                    case "btime": limits.setBlackTime(Long.parseLong(tokens[++i])); break;
+                    case "winc": limits.setWhiteIncrement(Long.parseLong(tokens[++i])); break;
+                    case "binc": limits.setBlackIncrement(Long.parseLong(tokens[++i])); break;
+                    case "movestogo": limits.setMovesToGo(Integer.parseInt(tokens[++i])); break;
+                    case "infinite": limits.setInfinite(true); break;
+                    case "mate": mate = Integer.parseInt(tokens[++i]); break;
+                    default: break;
+                }
+            }
+        } catch(NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            out.println("info string invalid go command");
+            return;
+        }
+
+        ChessMatch match = chessMatch;
+        int mateMoves = mate;
+        if(mateMoves > 0 && mateSolver == null) mateSolver = new MateSolver();
+        CountDownLatch release = limits.isInfinite() ? new CountDownLatch(1) : null;
+        infiniteRelease = release;
+        holdingBestMove = false;
+        running = searchThread.submit(() -> {
+            int best = Move.NONE;
+            try {
+                if(mateMoves > 0) best = solveMate(match, mateMoves, limits.getNodes());
+                else best = search.search(match, limits).getBestMove();
+            } catch(RuntimeException e) {
+                out.println("info string search failed: " + e);
+            }
+            if(release != null) {
+                holdingBestMove = true;
+                try {
+                    release.await();
+                } catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            out.println("bestmove " + Move.toUci(best));
+        });
+    }
+
+    /**
+     * Runs the proof-number solver for go mate. Without a proven mate a
+     * one ply search still names a move.
+     */
+    private int solveMate(ChessMatch match, int moves, long nodes) {
+        MateResult result = mateSolver.solve(match, moves, nodes);
+        if(result.getStatus() != MateResult.Status.PROVEN) {
+            out.println("info string no mate in " + moves + " found: " + result.getStatus().toString().toLowerCase()
+                    + " after " + result.getNodes() + " nodes");
+            SearchLimits limits = new SearchLimits();
+            limits.setDepth(1);
+            return search.search(match, limits).getBestMove();
+        }
+        int[] line = result.getLine();
+        StringBuilder sb = new StringBuilder("info depth ").append(line.length)
+                .append(" score mate ").append(result.getMateIn())
+                .append(" nodes ").append(result.getNodes())
+                .append(" time ").append(result.getTimeMillis())
+                .append(" hashfull ").append(result.getTableEntriesUsed() * 1000L / result.getTableEntries())
+                .append(" pv");
+        for(int move : line) sb.append(' ').append(Move.toUci(move));
+        out.println(sb);
+        return line[0];
+    }
+
+    private void stopSearch() {
+        if(running == null) return;
+        MateSolver solver = mateSolver;
+        // a search that has not started yet would clear the request, so wait for it
+        while(!holdingBestMove && !search.isRunning() && (solver == null || !solver.isRunning()) && !running.isDone())
+            Thread.onSpinWait();
+        search.stop();
+        if(solver != null) solver.stop();
+        CountDownLatch release = infiniteRelease;
+        if(release != null) release.countDown();
+    }
+
+    private void waitForSearch() {
+        if(running == null) return;
+        stopSearch();
+        try {
+            running.get();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch(ExecutionException e) {
+            out.println("info string " + e.getCause());
+        }
+        running = null;
+    }
+
+    private void printInfo(SearchInfo info) {
+        StringBuilder sb = new StringBuilder("info depth ").append(info.getDepth());
+        if(multiPv > 1) sb.append(" multipv ").append(info.getMultiPv());
+        if(info.isMateScore()) sb.append(" score mate ").append(info.getMateIn());
+        else sb.append(" score cp ").append(info.getScore());
+        sb.append(" nodes ").append(info.getNodes())
+                .append(" nps ").append(info.getNodesPerSecond())
+                .append(" time ").append(info.getTimeMillis())
+                .append(" pv");
+        for(int move : info.getPrincipalVariation()) {
+            sb.append(' ').append(Move.toUci(move));
+        }
+        out.println(sb);
+    }
+}
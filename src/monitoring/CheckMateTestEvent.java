@@ -0,0 +1,32 @@
+package monitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for one checkmate test. The test also fills the
+ * legal move cache, so the number of pseudo-legal moves tried is zero when
+ * the cache was already up to date.
+ *
+ * @author joana
+ */
+@Name("chess.CheckMateTest")
+@Label("Checkmate Test")
+@Category("Chess")
+@Description("A test of whether the side to move is checkmated")
+@StackTrace(false)
+public class CheckMateTestEvent extends Event {
+    @Label("Color")
+    public String color;
+
+    @Label("Pseudo-Legal Moves Tried")
+    @Description("Zero when the legal move cache was already up to date")
+    public int pseudoMoves;
+
+    @Label("Checkmate")
+    public boolean checkMate;
+}
@@ -0,0 +1,183 @@
+package monitoring;
+
+import chess.PieceType;
+import exceptions.ChessException.Reason;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Cleaner;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Counters for the rules hot paths, published over JMX as
+ * {@code chess:type=Metrics}. Instrumentation is off unless the JVM is
+ * started with {@code -Dchess.metrics=true}; {@link #ENABLED} is a constant,
+ * so when it is off the checks around each call site are compiled away.
+ *
+ * @author joana
+ */
+public class ChessMetrics implements ChessMetricsMXBean {
+    public static final boolean ENABLED = Boolean.getBoolean("chess.metrics");
+    public static final String OBJECT_NAME = "chess:type=Metrics";
+
+    public static final Timer PERFORM_CHESS_MOVE = new Timer();
+    public static final Timer TEST_CHECK = new Timer();
+    public static final Timer TEST_CHECK_MATE = new Timer();
+    public static final Timer MAKE_MOVE = new Timer();
+    public static final Timer UNDO_MOVE = new Timer();
+
+    private static final PieceType[] PIECE_TYPES = PieceType.values();
+    private static final Reason[] REASONS = Reason.values();
+    private static final Timer[] POSSIBLE_MOVES = new Timer[PIECE_TYPES.length];
+    private static final LongAdder[] REJECTED_MOVES = new LongAdder[REASONS.length];
+    private static final LongAdder ACTIVE_MATCHES = new LongAdder();
+    private static final Cleaner CLEANER = ENABLED ? Cleaner.create() : null;
+    private static final String REGISTRATION_ERROR;
+
+    static {
+        for(int i = 0; i < POSSIBLE_MOVES.length; i++) POSSIBLE_MOVES[i] = new Timer();
+        for(int i = 0; i < REJECTED_MOVES.length; i++) REJECTED_MOVES[i] = new LongAdder();
+        REGISTRATION_ERROR = ENABLED ? register() : null;
+    }
+
+    private ChessMetrics() {
+    }
+
+    /**
+     * Registers the MBean, returning why it could not be, or null.
+     */
+    private static String register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new ChessMetrics(), new ObjectName(OBJECT_NAME));
+            return null;
+        } catch(JMException e) {
+            return "Could not register " + OBJECT_NAME + ": " + e.getMessage();
+        }
+    }
+
+    /**
+     * Why the counters could not be published over JMX, or null if they were
+     * or instrumentation is off. The counters still work either way; the
+     * application decides whether to tell the user.
+     */
+    public static String getRegistrationError() {
+        return REGISTRATION_ERROR;
+    }
+
+    public static Timer possibleMoves(PieceType type) {
+        return POSSIBLE_MOVES[type.ordinal()];
+    }
+
+    public static void rejected(Reason reason) {
+        REJECTED_MOVES[reason.ordinal()].increment();
+    }
+
+    /**
+     * Counts a new match as active until it becomes unreachable.
+     */
+    public static void matchCreated(Object match) {
+        ACTIVE_MATCHES.increment();
+        CLEANER.register(match, ACTIVE_MATCHES::decrement);
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return ENABLED;
+    }
+
+    @Override
+    public long getPerformChessMoveCalls() {
+        return PERFORM_CHESS_MOVE.getCalls();
+    }
+
+    @Override
+    public long getPerformChessMoveNanos() {
+        return PERFORM_CHESS_MOVE.getNanos();
+    }
+
+    @Override
+    public long getTestCheckCalls() {
+        return TEST_CHECK.getCalls();
+    }
+
+    @Override
+    public long getTestCheckNanos() {
+        return TEST_CHECK.getNanos();
+    }
+
+    @Override
+    public long getTestCheckMateCalls() {
+        return TEST_CHECK_MATE.getCalls();
+    }
+
+    @Override
+    public long getTestCheckMateNanos() {
+        return TEST_CHECK_MATE.getNanos();
+    }
+
+    @Override
+    public long getMakeMoveCalls() {
+        return MAKE_MOVE.getCalls();
+    }
+
+    @Override
+    public long getMakeMoveNanos() {
+        return MAKE_MOVE.getNanos();
+    }
+
+    @Override
+    public long getUndoMoveCalls() {
+        return UNDO_MOVE.getCalls();
+    }
+
+    @Override
+    public long getUndoMoveNanos() {
+        return UNDO_MOVE.getNanos();
+    }
+
+    @Override
+    public Map<String, Long> getPossibleMovesCalls() {
+        return byPieceType(Timer::getCalls);
+    }
+
+    @Override
+    public Map<String, Long> getPossibleMovesNanos() {
+        return byPieceType(Timer::getNanos);
+    }
+
+    private static Map<String, Long> byPieceType(ToLongFunction<Timer> value) {
+        Map<String, Long> map = new LinkedHashMap<>();
+        for(PieceType type : PIECE_TYPES) {
+            map.put(type.name(), value.applyAsLong(POSSIBLE_MOVES[type.ordinal()]));
+        }
+        return map;
+    }
+
+    @Override
+    public Map<String, Long> getRejectedMoves() {
+        Map<String, Long> map = new LinkedHashMap<>();
+        for(Reason reason : REASONS) {
+            map.put(reason.name(), REJECTED_MOVES[reason.ordinal()].sum());
+        }
+        return map;
+    }
+
+    @Override
+    public long getActiveMatches() {
+        return ACTIVE_MATCHES.sum();
+    }
+
+    @Override
+    public void reset() {
+        PERFORM_CHESS_MOVE.reset();
+        TEST_CHECK.reset();
+        TEST_CHECK_MATE.reset();
+        MAKE_MOVE.reset();
+        UNDO_MOVE.reset();
+        for(Timer timer : POSSIBLE_MOVES) timer.reset();
+        for(LongAdder adder : REJECTED_MOVES) adder.reset();
+    }
+}
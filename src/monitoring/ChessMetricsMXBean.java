@@ -0,0 +1,53 @@
+package monitoring;
+
+import java.util.Map;
+
+/**
+ * Management interface of {@link ChessMetrics}. Times are cumulative
+ * nanoseconds and include nested calls, so the time of testCheckMate also
+ * counts the makeMove and testCheck calls it makes.
+ *
+ * @author joana
+ */
+public interface ChessMetricsMXBean {
+    boolean isEnabled();
+
+    long getPerformChessMoveCalls();
+
+    long getPerformChessMoveNanos();
+
+    long getTestCheckCalls();
+
+    long getTestCheckNanos();
+
+    long getTestCheckMateCalls();
+
+    long getTestCheckMateNanos();
+
+    long getMakeMoveCalls();
+
+    long getMakeMoveNanos();
+
+    long getUndoMoveCalls();
+
+    long getUndoMoveNanos();
+
+    /**
+     * Calls to possibleMoves by piece type.
+     */
+    Map<String, Long> getPossibleMovesCalls();
+
+    Map<String, Long> getPossibleMovesNanos();
+
+    /**
+     * Moves refused with a ChessException, by its reason.
+     */
+    Map<String, Long> getRejectedMoves();
+
+    /**
+     * Matches created and not yet garbage collected.
+     */
+    long getActiveMatches();
+
+    void reset();
+}
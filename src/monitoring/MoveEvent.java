@@ -0,0 +1,45 @@
+package monitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for a move accepted by
+ * {@link chess.ChessMatch#performChessMove}, timed from validation to the
+ * end of the checkmate test.
+ *
+ * @author joana
+ */
+@Name("chess.Move")
+@Label("Chess Move")
+@Category("Chess")
+@Description("A move played in a match")
+@StackTrace(false)
+public class MoveEvent extends Event {
+    @Label("Source")
+    public String source;
+
+    @Label("Target")
+    public String target;
+
+    @Label("Capture")
+    public boolean capture;
+
+    @Label("Promotion")
+    @Description("Piece the pawn was promoted to, if any")
+    public String promotion;
+
+    @Label("Check")
+    public boolean check;
+
+    @Label("Checkmate")
+    public boolean checkMate;
+
+    @Label("Position")
+    @Description("Position after the move, in FEN")
+    public String position;
+}
@@ -0,0 +1,45 @@
+package monitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Percentage;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for one completed iteration of
+ * {@link chess.engine.Search}. Nodes and hash hits are counted from the start of the search.
+ *
+ * @author joana
+ */
+@Name("chess.SearchIteration")
+@Label("Search Iteration")
+@Category("Chess")
+@StackTrace(false)
+public class SearchIterationEvent extends Event {
+    @Label("Depth")
+    public int depth;
+
+    @Label("Score")
+    public int score;
+
+    @Label("Nodes")
+    public long nodes;
+
+    @Label("Nodes per Second")
+    public long nodesPerSecond;
+
+    @Label("Pawn Cache Hit Rate")
+    @Percentage
+    public double pawnCacheHitRate;
+
+    @Label("Hash Hits")
+    public long hashHits;
+
+    @Label("Best Move")
+    public String bestMove;
+
+    @Label("Position")
+    public String position;
+}
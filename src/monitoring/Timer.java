@@ -0,0 +1,36 @@
+package monitoring;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Number of calls to an operation and the nanoseconds spent in them. Both
+ * are striped adders, so threads recording at the same time do not contend
+ * on a single counter.
+ *
+ * @author joana
+ */
+public class Timer {
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder nanos = new LongAdder();
+
+    /**
+     * Records one call that started at {@code start}, a {@link System#nanoTime()} value.
+     */
+    public void record(long start) {
+        nanos.add(System.nanoTime() - start);
+        calls.increment();
+    }
+
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    public long getNanos() {
+        return nanos.sum();
+    }
+
+    void reset() {
+        calls.reset();
+        nanos.reset();
+    }
+}